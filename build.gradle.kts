@@ -2,6 +2,7 @@ plugins {
 	java
 	id("org.springframework.boot") version "2.7.0"
 	id("io.spring.dependency-management") version "1.1.7"
+	id("com.google.protobuf") version "0.9.5"
 }
 
 group = "by.klochkov"
@@ -23,14 +24,20 @@ repositories {
 	mavenCentral()
 }
 
+val protobufVersion = "3.25.5"
+
 dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-data-jpa")
+	implementation("org.hibernate:hibernate-jcache")
+	implementation("com.github.ben-manes.caffeine:jcache")
 	implementation("org.springframework.boot:spring-boot-starter-validation")
 	implementation("org.springframework.boot:spring-boot-starter-web")
 	implementation("org.springdoc:springdoc-openapi-ui:1.6.15")
 
 	implementation("org.liquibase:liquibase-core")
 	implementation("com.opencsv:opencsv:5.8")
+	implementation("net.ttddyy:datasource-proxy:1.8.1")
+	implementation("com.google.protobuf:protobuf-java:$protobufVersion")
 	runtimeOnly("org.postgresql:postgresql")
 
 	compileOnly("org.projectlombok:lombok")
@@ -40,9 +47,94 @@ dependencies {
 	annotationProcessor("org.mapstruct:mapstruct-processor:1.5.5.Final")
 
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
+	testRuntimeOnly("com.h2database:h2")
 	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
+protobuf {
+	protoc {
+		artifact = "com.google.protobuf:protoc:$protobufVersion"
+	}
+}
+
 tasks.withType<Test> {
 	useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+val cdsDir = layout.buildDirectory.dir("cds")
+val cdsArchive = layout.buildDirectory.file("cds/shop-socks.jsa")
+
+val prepareCdsLayout by tasks.registering(Sync::class) {
+	group = "startup"
+	description = "Раскладывает jar приложения и зависимостей для запуска с AppCDS"
+	from(tasks.jar)
+	from(configurations.runtimeClasspath)
+	into(cdsDir.map { it.dir("lib") })
+}
+
+// AppCDS требует одинаковый classpath при записи и чтении архива: jar приложения первым, затем зависимости
+val cdsClasspath = prepareCdsLayout.map { task ->
+	val appJar = tasks.jar.get().archiveFileName.get()
+	val libs = task.destinationDir.listFiles().orEmpty().map { it.name }.filter { it != appJar }.sorted()
+	(listOf(appJar) + libs).map { task.destinationDir.resolve(it) }
+}
+
+tasks.register<JavaExec>("appCdsArchive") {
+	group = "startup"
+	description = "Тренировочный запуск приложения, после старта классы сохраняются в архив AppCDS"
+	dependsOn(prepareCdsLayout)
+	classpath = files(cdsClasspath)
+	mainClass.set("by.klochkov.shop_socks.ShopSocksApplication")
+	jvmArgs("-XX:ArchiveClassesAtExit=${cdsArchive.get().asFile}")
+	args("--spring.profiles.active=fast-startup", "--shop-socks.startup.exit-after-start=true")
+	outputs.file(cdsArchive)
+}
+
+tasks.register<JavaExec>("bootRunCds") {
+	group = "startup"
+	description = "Запуск приложения с архивом AppCDS и профилем fast-startup"
+	dependsOn(prepareCdsLayout)
+	classpath = files(cdsClasspath)
+	mainClass.set("by.klochkov.shop_socks.ShopSocksApplication")
+	jvmArgs("-XX:SharedArchiveFile=${cdsArchive.get().asFile}", "-Xshare:auto")
+	args("--spring.profiles.active=fast-startup")
+}
+
+val benchmark by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+	runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[benchmark.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[benchmark.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+configurations[benchmark.compileOnlyConfigurationName].extendsFrom(configurations.compileOnly.get())
+configurations[benchmark.annotationProcessorConfigurationName].extendsFrom(configurations.annotationProcessor.get())
+
+fun benchmarkArgs(vararg names: String) = names.mapNotNull { name ->
+	providers.gradleProperty(name).orNull?.let { "--$name=$it" }
+}
+
+tasks.register<JavaExec>("generateSocksCsv") {
+	group = "benchmark"
+	description = "Генерирует CSV для загрузки: -Prows, -PdistinctKeys, -PzipfExponent, -Pseed, -Poutput"
+	classpath = benchmark.runtimeClasspath
+	mainClass.set("by.klochkov.shop_socks.benchmark.SockCsvGenerator")
+	args(benchmarkArgs("rows", "distinctKeys", "zipfExponent", "seed", "output"))
+}
+
+tasks.register<JavaExec>("importBenchmark") {
+	group = "benchmark"
+	description = "Замер загрузки CSV через SockService против локальной БД, -PminRowsPerSecond задаёт порог"
+	classpath = benchmark.runtimeClasspath
+	mainClass.set("by.klochkov.shop_socks.benchmark.ImportBenchmark")
+	maxHeapSize = providers.gradleProperty("benchmarkHeap").getOrElse("4g")
+	args(benchmarkArgs("rows", "distinctKeys", "zipfExponent", "seed", "minRowsPerSecond", "clean", "workDir", "report"))
+}
+
+tasks.register<JavaExec>("serializationBenchmark") {
+	group = "benchmark"
+	description = "Размер и время кодирования сообщений контроллера в JSON и protobuf: -Piterations, -PreportIterations, -Prejects"
+	classpath = benchmark.runtimeClasspath
+	mainClass.set("by.klochkov.shop_socks.benchmark.SerializationBenchmark")
+	args(benchmarkArgs("iterations", "reportIterations", "rejects", "report"))
+}
@@ -0,0 +1,39 @@
+package by.klochkov.shop_socks.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Аргументы вида {@code --name=value}.
+ */
+class BenchmarkOptions {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    BenchmarkOptions(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Ожидается аргумент вида --name=value: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+    }
+
+    String getString(String name, String defaultValue) {
+        String value = values.get(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+    long getLong(String name, long defaultValue) {
+        return Long.parseLong(getString(name, String.valueOf(defaultValue)));
+    }
+
+    double getDouble(String name, double defaultValue) {
+        return Double.parseDouble(getString(name, String.valueOf(defaultValue)));
+    }
+
+    boolean getBoolean(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(name, String.valueOf(defaultValue)));
+    }
+}
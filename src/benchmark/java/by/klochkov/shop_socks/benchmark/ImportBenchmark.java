@@ -0,0 +1,149 @@
+package by.klochkov.shop_socks.benchmark;
+
+import by.klochkov.shop_socks.ShopSocksApplication;
+import by.klochkov.shop_socks.service.SockService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Сквозной замер {@link SockService#processCsvFile} на сгенерированных файлах против локальной БД
+ * (подключение берётся из DATABASE_URL / DATABASE_USERNAME / DATABASE_PASSWORD, как у приложения).
+ * Для каждого размера печатает строки в секунду, пик кучи, время GC и число SQL-запросов, дописывает
+ * результат в CSV и завершается с кодом 1, если скорость ниже {@code --minRowsPerSecond}.
+ */
+public class ImportBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        BenchmarkOptions options = new BenchmarkOptions(args);
+        List<Long> sizes = Arrays.stream(options.getString("rows", "1000000,10000000").split(","))
+                .map(String::trim)
+                .map(Long::parseLong)
+                .toList();
+        long distinctKeys = options.getLong("distinctKeys", 10_000);
+        double zipfExponent = options.getDouble("zipfExponent", 1.0);
+        long seed = options.getLong("seed", 42);
+        double minRowsPerSecond = options.getDouble("minRowsPerSecond", 0);
+        boolean clean = options.getBoolean("clean", false);
+        Path workDir = Path.of(options.getString("workDir", "build/benchmark"));
+        Path report = Path.of(options.getString("report", workDir.resolve("import-results.csv").toString()));
+
+        List<Result> results = new ArrayList<>();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ShopSocksApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.jpa.properties.hibernate.generate_statistics=true",
+                        "--logging.level.by.klochkov.shop_socks=WARN",
+                        "--logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN")) {
+            SockService sockService = context.getBean(SockService.class);
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            EntityManagerFactory entityManagerFactory = context.getBean(EntityManagerFactory.class);
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+            for (long rows : sizes) {
+                Path csv = workDir.resolve("socks-" + rows + "-" + distinctKeys + "-" + zipfExponent + ".csv");
+                if (!Files.exists(csv)) {
+                    new SockCsvGenerator(distinctKeys, zipfExponent, seed).write(csv, rows);
+                }
+                if (clean) {
+                    reset(jdbcTemplate, entityManagerFactory);
+                }
+                results.add(run(sockService, statistics, csv, rows));
+            }
+        }
+
+        writeReport(report, results, distinctKeys, zipfExponent);
+        boolean failed = false;
+        for (Result result : results) {
+            System.out.printf("%,12d строк: %,10.0f строк/с, %7.1f с, пик кучи %,6d МБ, GC %,7d мс, SQL %,d%n",
+                    result.rows(), result.rowsPerSecond(), result.seconds(), result.peakHeapBytes() >> 20,
+                    result.gcMillis(), result.statements());
+            if (result.rowsPerSecond() < minRowsPerSecond) {
+                System.out.printf("  ниже порога %,.0f строк/с%n", minRowsPerSecond);
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Резервы и уведомления о пороге ссылаются на удаляемые носки. Кеш второго уровня сбрасывается,
+     * чтобы каждый прогон, как и первый, начинался с пустого кеша.
+     */
+    private static void reset(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        jdbcTemplate.update("DELETE FROM reservations");
+        jdbcTemplate.update("DELETE FROM low_stock_alerts");
+        jdbcTemplate.update("DELETE FROM socks");
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    private static Result run(SockService sockService, Statistics statistics, Path csv, long rows) {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        statistics.clear();
+        long gcBefore = totalGcMillis();
+
+        long start = System.nanoTime();
+        sockService.processCsvFile(new FileSystemMultipartFile(csv));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        return new Result(rows, seconds, rows / seconds, peakHeap, totalGcMillis() - gcBefore,
+                statistics.getPrepareStatementCount());
+    }
+
+    private static long totalGcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(time -> time > 0)
+                .sum();
+    }
+
+    private static void writeReport(Path report, List<Result> results, long distinctKeys, double zipfExponent)
+            throws IOException {
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        boolean header = !Files.exists(report);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (header) {
+                writer.println("timestamp;rows;distinctKeys;zipfExponent;seconds;rowsPerSecond;peakHeapBytes;gcMillis;statements");
+            }
+            Instant now = Instant.now();
+            for (Result result : results) {
+                writer.printf(Locale.ROOT, "%s;%d;%d;%s;%.3f;%.0f;%d;%d;%d%n", now, result.rows(), distinctKeys, zipfExponent,
+                        result.seconds(), result.rowsPerSecond(), result.peakHeapBytes(), result.gcMillis(),
+                        result.statements());
+            }
+        }
+    }
+
+    private record Result(long rows, double seconds, double rowsPerSecond, long peakHeapBytes, long gcMillis,
+                          long statements) {
+    }
+}
@@ -0,0 +1,166 @@
+package by.klochkov.shop_socks.benchmark;
+
+import by.klochkov.shop_socks.controller.GlobalExceptionHandler;
+import by.klochkov.shop_socks.dto.CsvImportReportDto;
+import by.klochkov.shop_socks.dto.CsvRejectedRowDto;
+import by.klochkov.shop_socks.dto.SockDto;
+import by.klochkov.shop_socks.dto.SockRequestDto;
+import by.klochkov.shop_socks.mapper.SockProtoMapper;
+import by.klochkov.shop_socks.proto.CsvImportReport;
+import by.klochkov.shop_socks.proto.ErrorResponse;
+import by.klochkov.shop_socks.proto.Sock;
+import by.klochkov.shop_socks.proto.SockRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.LongStream;
+
+/**
+ * Сравнение JSON (Jackson) и protobuf на сообщениях контроллера носков: размер тела и время
+ * кодирования и разбора одного сообщения. Кодирование protobuf включает перевод DTO в сообщение
+ * через {@link SockProtoMapper}, как на сервере. Результат печатается и дописывается в CSV.
+ */
+public class SerializationBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    // результаты циклов складываются сюда, чтобы JIT не выбросил кодирование как неиспользуемое
+    private static volatile long blackhole;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkOptions options = new BenchmarkOptions(args);
+        long iterations = options.getLong("iterations", 200_000);
+        long reportIterations = options.getLong("reportIterations", 2_000);
+        int rejects = (int) options.getLong("rejects", 1000);
+        Path report = Path.of(options.getString("report", "build/benchmark/serialization-results.csv"));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        SockProtoMapper protoMapper = new SockProtoMapper();
+        List<Case> cases = List.of(
+                new Case("SockRequestDto", new SockRequestDto("red", 80, 15),
+                        value -> objectMapper.writeValueAsBytes(value),
+                        bytes -> objectMapper.readValue(bytes, SockRequestDto.class),
+                        value -> protoMapper.toMessage((SockRequestDto) value).toByteArray(),
+                        bytes -> protoMapper.fromMessage(SockRequest.parseFrom(bytes), SockRequestDto.class)),
+                new Case("SockDto", new SockDto("red", 80, 15),
+                        value -> objectMapper.writeValueAsBytes(value),
+                        bytes -> objectMapper.readValue(bytes, SockDto.class),
+                        value -> protoMapper.toMessage(value).toByteArray(),
+                        Sock::parseFrom),
+                new Case("ErrorResponse", new GlobalExceptionHandler.ErrorResponse(404, "Not Found", "Socks not found"),
+                        value -> objectMapper.writeValueAsBytes(value),
+                        bytes -> objectMapper.readValue(bytes, JsonNode.class),
+                        value -> protoMapper.toMessage(value).toByteArray(),
+                        ErrorResponse::parseFrom),
+                new Case("CsvImportReportDto x" + rejects, importReport(rejects),
+                        value -> objectMapper.writeValueAsBytes(value),
+                        bytes -> objectMapper.readValue(bytes, CsvImportReportDto.class),
+                        value -> protoMapper.toMessage(value).toByteArray(),
+                        CsvImportReport::parseFrom));
+
+        List<Result> results = new ArrayList<>();
+        for (Case benchmarkCase : cases) {
+            // отчёт о загрузке в сотни раз больше остальных сообщений, итераций для него меньше
+            long caseIterations = benchmarkCase.value() instanceof CsvImportReportDto ? reportIterations : iterations;
+            results.add(measure(benchmarkCase, "json", benchmarkCase.jsonEncoder(), benchmarkCase.jsonDecoder(),
+                    caseIterations));
+            results.add(measure(benchmarkCase, "protobuf", benchmarkCase.protobufEncoder(),
+                    benchmarkCase.protobufDecoder(), caseIterations));
+        }
+
+        writeReport(report, results);
+        System.out.printf("%-26s %-9s %10s %14s %14s%n", "сообщение", "формат", "байт", "кодир. нс", "разбор нс");
+        for (Result result : results) {
+            System.out.printf("%-26s %-9s %,10d %,14.0f %,14.0f%n", result.message(), result.format(), result.bytes(),
+                    result.encodeNanos(), result.decodeNanos());
+        }
+    }
+
+    private static Result measure(Case benchmarkCase, String format, Encoder encoder, Decoder decoder, long iterations)
+            throws Exception {
+        byte[] body = encoder.encode(benchmarkCase.value());
+        long sink = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            sink += encodeLoop(benchmarkCase.value(), encoder, iterations);
+            sink += decodeLoop(body, decoder, iterations);
+        }
+        long start = System.nanoTime();
+        sink += encodeLoop(benchmarkCase.value(), encoder, iterations);
+        double encodeNanos = (double) (System.nanoTime() - start) / iterations;
+        start = System.nanoTime();
+        sink += decodeLoop(body, decoder, iterations);
+        double decodeNanos = (double) (System.nanoTime() - start) / iterations;
+        blackhole = sink;
+        return new Result(benchmarkCase.name(), format, body.length, encodeNanos, decodeNanos, iterations);
+    }
+
+    private static long encodeLoop(Object value, Encoder encoder, long iterations) throws Exception {
+        long sink = 0;
+        for (long i = 0; i < iterations; i++) {
+            sink += encoder.encode(value).length;
+        }
+        return sink;
+    }
+
+    private static long decodeLoop(byte[] body, Decoder decoder, long iterations) throws Exception {
+        long sink = 0;
+        for (long i = 0; i < iterations; i++) {
+            sink += decoder.decode(body).hashCode();
+        }
+        return sink;
+    }
+
+    private static CsvImportReportDto importReport(int rejects) {
+        List<CsvRejectedRowDto> rows = LongStream.rangeClosed(1, rejects)
+                .mapToObj(line -> new CsvRejectedRowDto(line * 97, "red,abc," + line,
+                        "Процент хлопка должен быть целым числом: abc"))
+                .toList();
+        return new CsvImportReportDto(rejects * 100L, rejects * 99L, rejects, false, rows);
+    }
+
+    private static void writeReport(Path report, List<Result> results) throws IOException {
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        boolean header = !Files.exists(report);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (header) {
+                writer.println("timestamp;message;format;bytes;encodeNanos;decodeNanos;iterations");
+            }
+            Instant now = Instant.now();
+            for (Result result : results) {
+                writer.printf(Locale.ROOT, "%s;%s;%s;%d;%.1f;%.1f;%d%n", now, result.message(), result.format(),
+                        result.bytes(), result.encodeNanos(), result.decodeNanos(), result.iterations());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        byte[] encode(Object value) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Decoder {
+        Object decode(byte[] body) throws Exception;
+    }
+
+    private record Case(String name, Object value, Encoder jsonEncoder, Decoder jsonDecoder,
+                        Encoder protobufEncoder, Decoder protobufDecoder) {
+    }
+
+    private record Result(String message, String format, int bytes, double encodeNanos, double decodeNanos,
+                          long iterations) {
+    }
+}
@@ -0,0 +1,89 @@
+package by.klochkov.shop_socks.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Генерирует CSV в формате загрузки {@code /api/socks/batch}: заголовок и строки
+ * {@code color;cottonPercentage;quantity}. Позиции (цвет, процент хлопка) выбираются из
+ * {@code distinctKeys} вариантов по закону Ципфа с показателем {@code zipfExponent}
+ * (0 — равномерно, чем больше, тем сильнее перекос в сторону популярных позиций).
+ */
+public class SockCsvGenerator {
+
+    private static final String[] COLORS = {
+            "red", "blue", "green", "black", "white", "yellow", "grey", "brown",
+            "pink", "purple", "orange", "navy", "beige", "olive", "teal", "maroon"
+    };
+    private static final int COTTON_VALUES = 101;
+
+    private final long distinctKeys;
+    private final double[] cumulative;
+    private final Random random;
+
+    public SockCsvGenerator(long distinctKeys, double zipfExponent, long seed) {
+        if (distinctKeys <= 0 || distinctKeys > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("distinctKeys должен быть в интервале 1.." + Integer.MAX_VALUE);
+        }
+        this.distinctKeys = distinctKeys;
+        this.random = new Random(seed);
+        this.cumulative = new double[(int) distinctKeys];
+        double sum = 0;
+        for (int rank = 0; rank < distinctKeys; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, zipfExponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < distinctKeys; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        BenchmarkOptions options = new BenchmarkOptions(args);
+        Path output = Path.of(options.getString("output", "build/benchmark/socks.csv"));
+        long rows = options.getLong("rows", 1_000_000);
+        SockCsvGenerator generator = new SockCsvGenerator(options.getLong("distinctKeys", 10_000),
+                options.getDouble("zipfExponent", 1.0), options.getLong("seed", 42));
+
+        long start = System.nanoTime();
+        generator.write(output, rows);
+        System.out.printf("Сгенерировано %d строк в %s за %.1f с%n",
+                rows, output.toAbsolutePath(), (System.nanoTime() - start) / 1e9);
+    }
+
+    public void write(Path output, long rows) throws IOException {
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("color;cottonPercentage;quantity\n");
+            StringBuilder line = new StringBuilder(64);
+            for (long i = 0; i < rows; i++) {
+                int key = nextKey();
+                line.setLength(0);
+                line.append(color(key)).append(';')
+                        .append(key % COTTON_VALUES).append(';')
+                        .append(1 + random.nextInt(100)).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    private int nextKey() {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return (int) Math.min(rank, distinctKeys - 1);
+    }
+
+    private static String color(int key) {
+        int colorIndex = key / COTTON_VALUES;
+        String base = COLORS[colorIndex % COLORS.length];
+        int variant = colorIndex / COLORS.length;
+        return variant == 0 ? base : base + "-" + variant;
+    }
+}
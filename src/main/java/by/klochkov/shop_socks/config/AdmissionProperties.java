@@ -0,0 +1,54 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Ограничения одновременных запросов на запись и импорт CSV.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.admission")
+public class AdmissionProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Загрузка полосы записи, начиная с которой импорт CSV не принимается, чтобы не вытеснять
+     * единичные поступления и отпуски.
+     */
+    private double importYieldUtilization = 0.8;
+
+    private Lane write = new Lane(16, 4, 64);
+
+    private Lane csvImport = new Lane(2, 1, 4);
+
+    @Getter
+    @Setter
+    public static class Lane {
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+
+        /**
+         * Задержка ответа, превышение которой уменьшает лимит.
+         */
+        private Duration latencyThreshold = Duration.ofMillis(500);
+
+        private double backoffRatio = 0.9;
+
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        public Lane() {
+        }
+
+        public Lane(int initialLimit, int minLimit, int maxLimit) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+        }
+    }
+}
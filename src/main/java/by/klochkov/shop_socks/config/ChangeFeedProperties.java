@@ -0,0 +1,30 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки потока изменений {@code GET /api/socks/changes}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.change-feed")
+public class ChangeFeedProperties {
+
+    /**
+     * Сколько событий может ждать отправки одному клиенту, при переполнении клиент отключается.
+     */
+    private int subscriberBufferSize = 256;
+
+    /**
+     * Сколько последних событий хранится для продолжения с курсора.
+     */
+    private int replayBufferSize = 10_000;
+
+    private int dispatchThreads = 4;
+
+    private Duration emitterTimeout = Duration.ofMinutes(30);
+}
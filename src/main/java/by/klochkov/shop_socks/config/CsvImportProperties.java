@@ -0,0 +1,36 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Загрузка CSV в режиме с пропуском ошибочных строк.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.csv-import")
+public class CsvImportProperties {
+
+    /**
+     * Допустимая доля ошибочных строк, при превышении загрузка прерывается и откатывается.
+     */
+    private double maxErrorRate = 0.01;
+
+    /**
+     * Сколько строк прочитать, прежде чем проверять долю ошибок, чтобы не прерываться на первых строках.
+     * В файлах короче доля ошибок не проверяется.
+     */
+    private long minRowsForErrorRate = 1000;
+
+    /**
+     * Сколько отклонённых строк вернуть в отчёте, остальные только считаются.
+     */
+    private int maxReportedRejects = 1000;
+
+    /**
+     * Корректные строки применяются пачками по столько строк, файл целиком в памяти не держится.
+     * Транзакция при этом одна на весь файл.
+     */
+    private int batchSize = 1000;
+}
@@ -0,0 +1,26 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки хранения ответов по заголовку {@code Idempotency-Key}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.idempotency")
+public class IdempotencyProperties {
+
+    /**
+     * Сколько хранится ответ, после чего повтор с тем же ключом выполняется заново.
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * Максимальное количество ответов в памяти, остальные читаются из БД.
+     */
+    private int maxEntries = 10_000;
+}
@@ -0,0 +1,46 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Журнал поступлений: при включении поступление подтверждается после записи в локальный журнал,
+ * а в БД переносится фоновым потоком.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.income-wal")
+public class IncomeWalProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Каталог журнала, должен быть на постоянном томе экземпляра.
+     */
+    private Path directory = Path.of("data", "income-wal");
+
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    private Duration drainInterval = Duration.ofMillis(200);
+
+    /**
+     * Сколько поступление ждёт сброса журнала на диск, после этого запрос завершается с 503.
+     */
+    private Duration durableTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Сколько записей журнала переносится в БД одной транзакцией.
+     */
+    private int drainBatchSize = 10_000;
+
+    /**
+     * Сколько раз подряд переносится пачка, прежде чем записи переносятся по одной,
+     * а непереносимые уходят в карантинный файл.
+     */
+    private int maxDrainAttempts = 5;
+}
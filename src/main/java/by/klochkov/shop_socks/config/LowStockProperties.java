@@ -0,0 +1,70 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пороги дозаказа: позиция считается заканчивающейся, когда остаток ниже порога. Порог позиции
+ * важнее порога цвета, порог цвета важнее общего.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.low-stock")
+public class LowStockProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Порог для позиций без своего порога и порога цвета, 0 — не следить.
+     */
+    private int defaultThreshold = 0;
+
+    private Map<String, Integer> colors = new HashMap<>();
+
+    private List<Sku> skus = new ArrayList<>();
+
+    /**
+     * Сколько сверок с порогом может ждать своей очереди.
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * Куда отправляются уведомления о пересечении порога.
+     */
+    private SinkType sink = SinkType.LOG;
+
+    private Webhook webhook = new Webhook();
+
+    public enum SinkType {
+        LOG,
+        WEBHOOK
+    }
+
+    @Getter
+    @Setter
+    public static class Sku {
+
+        private String color;
+
+        private Integer cottonPercentage;
+
+        private int threshold;
+    }
+
+    @Getter
+    @Setter
+    public static class Webhook {
+
+        private URI url;
+
+        private Duration timeout = Duration.ofSeconds(2);
+    }
+}
@@ -0,0 +1,81 @@
+package by.klochkov.shop_socks.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Заменяет DataSource из автоконфигурации маршрутизатором между основной БД и репликами.
+ * Основная БД и пулы реплик не регистрируются бинами, чтобы DataSource в контексте был один.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "shop-socks.read-replicas", name = "enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties dataSourceProperties,
+                                               ReadReplicaProperties properties,
+                                               Environment environment) {
+        List<String> urls = properties.getUrls();
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("Включено чтение с реплик, но shop-socks.read-replicas.urls пуст");
+        }
+
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String name = "replica-" + (i + 1);
+            DataSourceBuilder<HikariDataSource> builder = DataSourceBuilder.create()
+                    .type(HikariDataSource.class);
+            if (properties.getDriverClassName() != null) {
+                builder.driverClassName(properties.getDriverClassName());
+            }
+            HikariDataSource replica = builder
+                    .url(urls.get(i))
+                    .username(properties.getUsername() != null
+                            ? properties.getUsername() : dataSourceProperties.determineUsername())
+                    .password(properties.getPassword() != null
+                            ? properties.getPassword() : dataSourceProperties.determinePassword())
+                    .build();
+            replica.setPoolName(name);
+            replica.setReadOnly(true);
+            replica.setMaximumPoolSize(properties.getMaximumPoolSize());
+            replica.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+            replicas.put(name, replica);
+        }
+
+        ReadYourWritesPolicy readYourWritesPolicy = new ReadYourWritesPolicy(properties.getClientHeader(),
+                properties.getReadYourWritesWindow(), properties.getMaxTrackedClients());
+        return new ReplicaRoutingDataSource(primary, replicas, readYourWritesPolicy,
+                properties.getHealthCheckInterval(), properties.getHealthCheckTimeout());
+    }
+
+    /**
+     * По умолчанию Hibernate держит соединение до закрытия сессии, а при open-in-view сессия живёт
+     * весь запрос: запись после чтения ушла бы в соединение реплики. Соединение отпускается после
+     * каждой транзакции, и следующая транзакция выбирает БД заново.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer readReplicaHibernateProperties() {
+        return hibernateProperties -> hibernateProperties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+}
@@ -0,0 +1,62 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Реплики для чтения: транзакции {@code readOnly} уходят на реплики по кругу, остальные — на основную БД
+ * из {@code spring.datasource}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.read-replicas")
+public class ReadReplicaProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * JDBC URL реплик.
+     */
+    private List<String> urls = new ArrayList<>();
+
+    /**
+     * Драйвер реплик, по умолчанию определяется по URL.
+     */
+    private String driverClassName;
+
+    /**
+     * Учётные данные реплик, по умолчанию как у основной БД.
+     */
+    private String username;
+
+    private String password;
+
+    private int maximumPoolSize = 10;
+
+    /**
+     * Сколько ждать соединения с репликой, прежде чем читать с основной БД.
+     */
+    private Duration connectionTimeout = Duration.ofSeconds(2);
+
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+    private Duration healthCheckTimeout = Duration.ofSeconds(1);
+
+    /**
+     * Сколько после своей записи клиент читает с основной БД, чтобы не увидеть на реплике данные
+     * до записи. Ноль отключает правило.
+     */
+    private Duration readYourWritesWindow = Duration.ofSeconds(5);
+
+    /**
+     * Заголовок с идентификатором клиента, без него клиент определяется по адресу.
+     */
+    private String clientHeader = "X-Client-Id";
+
+    private int maxTrackedClients = 10_000;
+}
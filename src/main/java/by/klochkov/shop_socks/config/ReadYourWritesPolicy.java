@@ -0,0 +1,54 @@
+package by.klochkov.shop_socks.config;
+
+import by.klochkov.shop_socks.util.ExpiringLruCache;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+
+/**
+ * Чтение своих записей: клиент, у которого недавно закоммитилась запись, читает с основной БД,
+ * пока не истечёт окно. Учитываются только запросы к этому экземпляру приложения; вне HTTP-запроса
+ * (фоновые потоки) клиента нет и правило не действует.
+ */
+public class ReadYourWritesPolicy {
+
+    private final String clientHeader;
+    private final ExpiringLruCache<String, Boolean> recentWriters;
+
+    public ReadYourWritesPolicy(String clientHeader, Duration window, int maxClients) {
+        this.clientHeader = clientHeader;
+        this.recentWriters = window.isZero() ? null : new ExpiringLruCache<>(maxClients, window);
+    }
+
+    public boolean requiresPrimary() {
+        if (recentWriters == null) {
+            return false;
+        }
+        String client = currentClient();
+        return client != null && recentWriters.get(client).isPresent();
+    }
+
+    /**
+     * @return клиент текущего запроса, которого нужно запомнить после коммита, или {@code null}
+     */
+    public String currentWriter() {
+        return recentWriters == null ? null : currentClient();
+    }
+
+    public void recordWrite(String client) {
+        recentWriters.put(client, Boolean.TRUE);
+    }
+
+    private String currentClient() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        String client = request.getHeader(clientHeader);
+        return client == null || client.isBlank() ? request.getRemoteAddr() : client;
+    }
+}
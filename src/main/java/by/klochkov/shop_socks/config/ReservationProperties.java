@@ -0,0 +1,27 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Настройки резервирования носков и колеса таймеров, снимающего просроченные резервы.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.reservation")
+public class ReservationProperties {
+
+    private Duration defaultTtl = Duration.ofMinutes(15);
+
+    private Duration maxTtl = Duration.ofHours(24);
+
+    /**
+     * Шаг нижнего уровня колеса, с этой точностью снимаются резервы.
+     */
+    private Duration tick = Duration.ofMillis(100);
+
+    private int wheelSize = 512;
+}
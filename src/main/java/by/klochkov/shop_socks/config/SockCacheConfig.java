@@ -0,0 +1,60 @@
+package by.klochkov.shop_socks.config;
+
+import by.klochkov.shop_socks.model.Sock;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Регионы кеша создаются здесь, а не по умолчанию провайдера, чтобы у них были заданные
+ * из application.yml размер и срок жизни. Если Hibernate запросит регион, которого здесь нет,
+ * приложение не стартует.
+ */
+@Configuration
+public class SockCacheConfig {
+
+    public static final String SOCK_REGION = Sock.class.getName();
+    public static final String SOCK_NATURAL_ID_REGION = SOCK_REGION + "##NaturalId";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager sockCacheManager(SockCacheProperties properties) {
+        // отдельный URI, чтобы несколько контекстов в одной JVM (тесты) не делили кеши
+        CacheManager cacheManager = new CaffeineCachingProvider().getCacheManager(
+                URI.create("shop-socks-" + UUID.randomUUID()), getClass().getClassLoader(), new Properties());
+        cacheManager.createCache(SOCK_REGION, regionConfiguration(properties.getEntity()));
+        cacheManager.createCache(SOCK_NATURAL_ID_REGION, regionConfiguration(properties.getNaturalId()));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer sockCacheHibernateProperties(SockCacheProperties properties,
+                                                                      CacheManager sockCacheManager) {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, properties.isEnabled());
+            if (properties.isEnabled()) {
+                hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+                hibernateProperties.put(ConfigSettings.CACHE_MANAGER, sockCacheManager);
+                hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            }
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> regionConfiguration(SockCacheProperties.Region region) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(region.getMaximumSize()));
+        configuration.setExpireAfterWrite(OptionalLong.of(region.getExpireAfterWrite().toNanos()));
+        configuration.setStoreByValue(false);
+        configuration.setNativeStatisticsEnabled(true);
+        return configuration;
+    }
+}
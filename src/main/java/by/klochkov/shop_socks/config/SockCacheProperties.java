@@ -0,0 +1,36 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Кеш второго уровня Hibernate для носков: сущности по id и соответствие (цвет, процент хлопка) → id.
+ * Кеши ограничены по размеру, вытеснение W-TinyLFU (Caffeine).
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "shop-socks.sock-cache")
+public class SockCacheProperties {
+
+    private boolean enabled = true;
+
+    private Region entity = new Region();
+
+    private Region naturalId = new Region();
+
+    @Getter
+    @Setter
+    public static class Region {
+
+        private long maximumSize = 10_000;
+
+        /**
+         * Кеш локален для экземпляра приложения, срок жизни ограничивает расхождение с БД
+         * при изменениях с других экземпляров.
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(10);
+    }
+}
@@ -0,0 +1,63 @@
+package by.klochkov.shop_socks.config;
+
+import by.klochkov.shop_socks.mapper.SockProtoMapper;
+import by.klochkov.shop_socks.proto.SockRequest;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+
+import java.io.IOException;
+
+/**
+ * Читает и пишет DTO контроллера носков в формате application/x-protobuf. Конвертер стоит в списке
+ * после Jackson, поэтому без явного Accept или Content-Type остаётся JSON.
+ */
+public class SockProtobufHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public static final MediaType PROTOBUF = ProtobufHttpMessageConverter.PROTOBUF;
+
+    private final SockProtoMapper protoMapper;
+
+    public SockProtobufHttpMessageConverter(SockProtoMapper protoMapper) {
+        super(PROTOBUF);
+        this.protoMapper = protoMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return protoMapper.canRead(clazz) || protoMapper.canWrite(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return protoMapper.canRead(clazz) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return protoMapper.canWrite(clazz) && canWrite(mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return protoMapper.fromMessage(SockRequest.parseFrom(inputMessage.getBody()), clazz);
+        } catch (InvalidProtocolBufferException e) {
+            throw new HttpMessageNotReadableException("Некорректное protobuf-сообщение: " + e.getMessage(), e,
+                    inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object value, HttpOutputMessage outputMessage) throws IOException {
+        Message message = protoMapper.toMessage(value);
+        outputMessage.getHeaders().set(ProtobufHttpMessageConverter.X_PROTOBUF_MESSAGE_HEADER,
+                message.getDescriptorForType().getFullName());
+        message.writeTo(outputMessage.getBody());
+    }
+}
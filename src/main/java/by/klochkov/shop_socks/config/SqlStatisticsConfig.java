@@ -0,0 +1,43 @@
+package by.klochkov.shop_socks.config;
+
+import by.klochkov.shop_socks.interceptor.SqlStatisticsFilter;
+import by.klochkov.shop_socks.util.SqlStatementCounter;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Учёт обращений к БД: DataSource оборачивается прокси, запросы к API получают отладочные заголовки.
+ * Включается {@code shop-socks.sql-statistics.enabled}, без него DataSource остаётся как есть.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "shop-socks.sql-statistics", name = "enabled", havingValue = "true")
+public class SqlStatisticsConfig {
+
+    @Bean
+    public static BeanPostProcessor sqlStatisticsDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource) {
+                    return ProxyDataSourceBuilder.create(beanName, dataSource)
+                            .listener(new SqlStatementCounter())
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<SqlStatisticsFilter> sqlStatisticsFilter() {
+        FilterRegistrationBean<SqlStatisticsFilter> registration = new FilterRegistrationBean<>(new SqlStatisticsFilter());
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
@@ -0,0 +1,29 @@
+package by.klochkov.shop_socks.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Завершает тренировочный запуск сразу после старта, чтобы JVM записала архив AppCDS
+ * с классами, загруженными при инициализации контекста.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "shop-socks.startup", name = "exit-after-start", havingValue = "true")
+public class TrainingRunExitListener {
+
+    private final ConfigurableApplicationContext context;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void exit() {
+        log.info("Тренировочный запуск завершён, приложение останавливается");
+        System.exit(SpringApplication.exit(context));
+    }
+}
@@ -0,0 +1,56 @@
+package by.klochkov.shop_socks.config;
+
+import by.klochkov.shop_socks.interceptor.AdmissionControlInterceptor;
+import by.klochkov.shop_socks.mapper.SockProtoMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    private final AdmissionProperties admissionProperties;
+    private final SockProtoMapper sockProtoMapper;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (admissionProperties.isEnabled()) {
+            registry.addInterceptor(new AdmissionControlInterceptor(admissionProperties))
+                    .addPathPatterns("/api/socks/**");
+        }
+    }
+
+    /**
+     * Protobuf-конвертер добавляется последним: при Accept: *&#47;* первым подходящим остаётся JSON.
+     * Строковый конвертер стоит раньше и пишет строку под любой тип, поэтому для application/x-protobuf
+     * он заменяется на копию, которая этот тип пропускает, и строка уходит в TextMessage.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.replaceAll(converter -> converter instanceof StringHttpMessageConverter stringConverter
+                ? new NonProtobufStringHttpMessageConverter(stringConverter)
+                : converter);
+        converters.add(new SockProtobufHttpMessageConverter(sockProtoMapper));
+    }
+
+    private static class NonProtobufStringHttpMessageConverter extends StringHttpMessageConverter {
+
+        private NonProtobufStringHttpMessageConverter(StringHttpMessageConverter original) {
+            super(original.getDefaultCharset());
+            setSupportedMediaTypes(original.getSupportedMediaTypes());
+        }
+
+        @Override
+        protected boolean canWrite(MediaType mediaType) {
+            return (mediaType == null || !SockProtobufHttpMessageConverter.PROTOBUF.equalsTypeAndSubtype(mediaType))
+                    && super.canWrite(mediaType);
+        }
+    }
+}
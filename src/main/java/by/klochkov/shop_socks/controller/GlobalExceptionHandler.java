@@ -1,12 +1,16 @@
 package by.klochkov.shop_socks.controller;
 
 import by.klochkov.shop_socks.exception.DataProcessingException;
+import by.klochkov.shop_socks.exception.IdempotencyConflictException;
 import by.klochkov.shop_socks.exception.NotEnoughQuantityException;
 import by.klochkov.shop_socks.exception.ResourceNotFoundException;
+import by.klochkov.shop_socks.exception.ServiceUnavailableException;
+import by.klochkov.shop_socks.exception.TooManyRequestsException;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -75,6 +79,27 @@ public class GlobalExceptionHandler {
         return buildErrorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
     }
 
+    @ExceptionHandler(IdempotencyConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    protected ResponseEntity<ErrorResponse> handleIdempotencyConflictException(IdempotencyConflictException e) {
+        return buildErrorResponse(HttpStatus.CONFLICT, e.getMessage());
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    protected ResponseEntity<ErrorResponse> handleTooManyRequestsException(TooManyRequestsException e) {
+        HttpStatus status = HttpStatus.TOO_MANY_REQUESTS;
+        return ResponseEntity.status(status.value())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorResponse(status.value(), status.getReasonPhrase(), e.getMessage()));
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    protected ResponseEntity<ErrorResponse> handleServiceUnavailableException(ServiceUnavailableException e) {
+        return buildErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ResponseEntity<ErrorResponse> handleGeneralError(Exception e) {
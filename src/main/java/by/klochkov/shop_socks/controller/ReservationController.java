@@ -0,0 +1,109 @@
+package by.klochkov.shop_socks.controller;
+
+import by.klochkov.shop_socks.dto.ReservationDto;
+import by.klochkov.shop_socks.dto.ReservationRequestDto;
+import by.klochkov.shop_socks.interceptor.Admission;
+import by.klochkov.shop_socks.interceptor.AdmissionLane;
+import by.klochkov.shop_socks.mapper.ReservationMapper;
+import by.klochkov.shop_socks.model.Reservation;
+import by.klochkov.shop_socks.service.ReservationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.Valid;
+
+@RestController
+@RequestMapping("api/socks/reservations")
+@RequiredArgsConstructor
+public class ReservationController {
+
+    private final ReservationService reservationService;
+    private final ReservationMapper reservationMapper;
+
+    @Operation(summary = "Резервирование",
+            description = "удержание носков до подтверждения, по истечении времени резерв снимается")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ReservationDto.class))
+            }),
+            @ApiResponse(responseCode = "400", description = "BadRequest", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
+                            examples = @ExampleObject(value = "{\"status\":400,\"error\":\"Bad Request\",\"messages\":" +
+                                    "\"Not enough socks in stock\"}"))
+            }),
+            @ApiResponse(responseCode = "404", description = "NotFound", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
+                            examples = @ExampleObject(value = "{\"status\":404,\"error\":\"Not Found\",\"messages\":" +
+                                    "\"ресурс не найден\"}"))
+            })
+    })
+    @PostMapping
+    @Admission(AdmissionLane.WRITE)
+    public ResponseEntity<ReservationDto> reserve(@RequestBody @Valid ReservationRequestDto requestDto) {
+        Reservation reservation = reservationService.reserve(requestDto.color(), requestDto.cottonPercentage(),
+                requestDto.quantity(), requestDto.ttlSeconds());
+        return ResponseEntity.ok(reservationMapper.toDto(reservation));
+    }
+
+    @Operation(summary = "Подтверждение резерва",
+            description = "отпуск зарезервированных носков")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ReservationDto.class))
+            }),
+            @ApiResponse(responseCode = "400", description = "BadRequest", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
+                            examples = @ExampleObject(value = "{\"status\":400,\"error\":\"Bad Request\",\"messages\":" +
+                                    "\"Резерв 1 уже не активен.\"}"))
+            }),
+            @ApiResponse(responseCode = "404", description = "NotFound", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
+                            examples = @ExampleObject(value = "{\"status\":404,\"error\":\"Not Found\",\"messages\":" +
+                                    "\"ресурс не найден\"}"))
+            })
+    })
+    @PostMapping("/{id}/confirm")
+    @Admission(AdmissionLane.WRITE)
+    public ResponseEntity<ReservationDto> confirm(@PathVariable Long id) {
+        return ResponseEntity.ok(reservationMapper.toDto(reservationService.confirm(id)));
+    }
+
+    @Operation(summary = "Отмена резерва",
+            description = "снятие резерва, носки снова доступны")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ReservationDto.class))
+            }),
+            @ApiResponse(responseCode = "400", description = "BadRequest", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
+                            examples = @ExampleObject(value = "{\"status\":400,\"error\":\"Bad Request\",\"messages\":" +
+                                    "\"Резерв 1 уже не активен.\"}"))
+            }),
+            @ApiResponse(responseCode = "404", description = "NotFound", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
+                            examples = @ExampleObject(value = "{\"status\":404,\"error\":\"Not Found\",\"messages\":" +
+                                    "\"ресурс не найден\"}"))
+            })
+    })
+    @PostMapping("/{id}/cancel")
+    @Admission(AdmissionLane.WRITE)
+    public ResponseEntity<ReservationDto> cancel(@PathVariable Long id) {
+        return ResponseEntity.ok(reservationMapper.toDto(reservationService.cancel(id)));
+    }
+}
@@ -1,10 +1,22 @@
 package by.klochkov.shop_socks.controller;
 
+import by.klochkov.shop_socks.dto.CacheStatisticsDto;
+import by.klochkov.shop_socks.dto.CsvImportReportDto;
+import by.klochkov.shop_socks.dto.IncomeAcceptedDto;
+import by.klochkov.shop_socks.dto.InventoryChangeDto;
+import by.klochkov.shop_socks.dto.LowStockAlertDto;
 import by.klochkov.shop_socks.dto.SockDto;
 import by.klochkov.shop_socks.dto.SockRequestDto;
 import by.klochkov.shop_socks.dto.UpdateSockDto;
+import by.klochkov.shop_socks.interceptor.Admission;
+import by.klochkov.shop_socks.interceptor.AdmissionLane;
 import by.klochkov.shop_socks.mapper.SockMapper;
 import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.service.CacheStatisticsService;
+import by.klochkov.shop_socks.service.ChangeFeedService;
+import by.klochkov.shop_socks.service.IdempotencyService;
+import by.klochkov.shop_socks.service.IncomeWalService;
+import by.klochkov.shop_socks.service.LowStockAlertService;
 import by.klochkov.shop_socks.service.SockService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -15,11 +27,18 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.validation.Valid;
+import java.util.List;
+import java.util.function.IntFunction;
 
 @RestController
 @RequestMapping("api/socks")
@@ -29,6 +48,11 @@ public class SockController {
     private static final Logger log = LoggerFactory.getLogger(SockController.class);
     private final SockService sockService;
     private final SockMapper sockMapper;
+    private final IdempotencyService idempotencyService;
+    private final ChangeFeedService changeFeedService;
+    private final CacheStatisticsService cacheStatisticsService;
+    private final ObjectProvider<IncomeWalService> incomeWalService;
+    private final ObjectProvider<LowStockAlertService> lowStockAlertService;
 
     @Operation(summary = "Получение количества носков",
             description = "получение количества носков в зависимости от фильтров" +
@@ -74,6 +98,29 @@ public class SockController {
         return ResponseEntity.ok(quantity);
     }
 
+    @Operation(summary = "Получение позиции",
+            description = "Позиция по цвету и проценту хлопка. Читается из кеша этого экземпляра приложения, " +
+                    "поэтому количество может отставать от изменений на других экземплярах и не учитывает резервы")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Sock.class))
+            }),
+            @ApiResponse(responseCode = "404", description = "NotFound", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
+                            examples = @ExampleObject(value = "{\"status\":404,\"error\":\"Not Found\",\"messages\":" +
+                                    "\"ресурс не найден\"}"))
+            })
+    })
+    @GetMapping("/sku")
+    public ResponseEntity<Sock> getSock(
+            @RequestParam @Schema(description = "Цвет носков", example = "red")
+            String color,
+            @RequestParam @Schema(description = "Процент содержания хлопка", example = "50")
+            Integer cottonPercentage) {
+        return ResponseEntity.ok(sockService.getSock(color, cottonPercentage));
+    }
 
     @Operation(summary = "Загруска файла с данными о носках", description = "Загружается файл и добавляются количество " +
             "носков к уже имеющемся и добавляются новые позиции")
@@ -103,12 +150,35 @@ public class SockController {
             })
     })
     @PostMapping("/batch")
+    @Admission(AdmissionLane.CSV_IMPORT)
     public ResponseEntity<String> uploadBatch(@RequestParam("content") MultipartFile file) {
         log.info("Uploading file: {}", file.getOriginalFilename());
         sockService.processCsvFile(file);
         return ResponseEntity.ok("Данные успешно загружены.");
     }
 
+    @Operation(summary = "Загрузка файла с пропуском ошибочных строк",
+            description = "Корректные строки загружаются, ошибочные возвращаются в отчёте с номером строки и причиной. " +
+                    "Если доля ошибочных строк превышает допустимую, загрузка прерывается и ничего не применяется")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CsvImportReportDto.class))
+            }),
+            @ApiResponse(responseCode = "400", description = "BadRequest", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
+                            examples = @ExampleObject(value = "{\"status\":400,\"error\":\"Bad Request\",\"messages\":" +
+                                    "\"Загрузка прервана на строке 1200: ошибочных строк 1.50%, допустимо не больше 1.00%.\"}"))
+            })
+    })
+    @PostMapping(value = "/batch", params = "tolerant=true")
+    @Admission(AdmissionLane.CSV_IMPORT)
+    public ResponseEntity<CsvImportReportDto> uploadBatchTolerant(@RequestParam("content") MultipartFile file) {
+        log.info("Uploading file with tolerant mode: {}", file.getOriginalFilename());
+        return ResponseEntity.ok(sockService.processCsvFileTolerant(file));
+    }
+
     @Operation(summary = "Обновление",
             description = "обновление параметров носков по id")
     @ApiResponses(value = {
@@ -137,6 +207,7 @@ public class SockController {
             })
     })
     @PutMapping("/{id}")
+    @Admission(AdmissionLane.WRITE)
     public ResponseEntity<Sock> updateSock(
             @PathVariable Long id,
             @Valid @RequestBody UpdateSockDto updateSockDto) {
@@ -151,6 +222,11 @@ public class SockController {
                     @Content(mediaType = "application/json",
                             schema = @Schema(implementation = SockDto.class))
             }),
+            @ApiResponse(responseCode = "202", description = "Поступление записано в журнал и будет перенесено в БД " +
+                    "(shop-socks.income-wal.enabled): в теле номер записи и количество из запроса, а не остаток", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = IncomeAcceptedDto.class))
+            }),
             @ApiResponse(responseCode = "400", description = "BadRequest", content = {
                     @Content(mediaType = "application/json",
                             schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class),
@@ -170,15 +246,40 @@ public class SockController {
                             examples = @ExampleObject(value = "{\"status\":500,\"error\":" +
                                     "\"Internal Server Error\",\"messages\":" +
                                     "\"Произошла ошибка на сервере во время выполнения этой операции\"}"))
+            }),
+            @ApiResponse(responseCode = "503", description = "Журнал поступлений не сбросился на диск за " +
+                    "shop-socks.income-wal.durable-timeout, поступление может быть перенесено позже", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = GlobalExceptionHandler.ErrorResponse.class))
             })
     })
     @PostMapping("/income")
-    public ResponseEntity<SockDto> registerIncome(
+    @Admission(AdmissionLane.WRITE)
+    public ResponseEntity<Object> registerIncome(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false)
+            @Schema(description = "Ключ идемпотентности, повтор с тем же ключом вернёт сохранённый ответ")
+            String idempotencyKey,
             @RequestBody @Valid SockRequestDto sockRequestDto) {
-        Sock sock = sockService.registerIncome(sockRequestDto.getColor(),
+        String fingerprint = IdempotencyService.fingerprint("income", sockRequestDto.getColor(),
                 sockRequestDto.getCottonPercentage(), sockRequestDto.getQuantity());
-        SockDto dto = sockMapper.toDto(sock);
-        return ResponseEntity.ok(dto);
+        // повтор отдаёт тело того же вида, что и первый ответ: 202 — журнал, 200 — остаток
+        IntFunction<Class<?>> bodyTypes = status ->
+                status == HttpStatus.ACCEPTED.value() ? IncomeAcceptedDto.class : SockDto.class;
+        return idempotencyService.execute(idempotencyKey, fingerprint, bodyTypes, () -> {
+            IncomeWalService incomeWal = incomeWalService.getIfAvailable();
+            if (incomeWal != null) {
+                long sequence = incomeWal.append(sockRequestDto.getColor(), sockRequestDto.getCottonPercentage(),
+                        sockRequestDto.getQuantity(), StringUtils.hasText(idempotencyKey) ? idempotencyKey : null);
+                return ResponseEntity.accepted()
+                        .header(IncomeWalService.SEQUENCE_HEADER, String.valueOf(sequence))
+                        .body(new IncomeAcceptedDto(sequence, sockRequestDto.getColor(),
+                                sockRequestDto.getCottonPercentage(), sockRequestDto.getQuantity()));
+            }
+            Sock sock = sockService.registerIncome(sockRequestDto.getColor(),
+                    sockRequestDto.getCottonPercentage(), sockRequestDto.getQuantity());
+            SockDto dto = sockMapper.toDto(sock);
+            return ResponseEntity.ok(dto);
+        });
     }
 
     @Operation(summary = "отпуск носков",
@@ -209,10 +310,66 @@ public class SockController {
             })
     })
     @PostMapping("/outcome")
+    @Admission(AdmissionLane.WRITE)
     public ResponseEntity<String> registerOutcome(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false)
+            @Schema(description = "Ключ идемпотентности, повтор с тем же ключом вернёт сохранённый ответ")
+            String idempotencyKey,
             @RequestBody @Valid SockRequestDto sockRequestDto) {
-        sockService.registerOutcome(sockRequestDto.getColor(),
+        String fingerprint = IdempotencyService.fingerprint("outcome", sockRequestDto.getColor(),
                 sockRequestDto.getCottonPercentage(), sockRequestDto.getQuantity());
-        return ResponseEntity.ok("Отпуск носков успешно зарегистрирован.");
+        return idempotencyService.execute(idempotencyKey, fingerprint, String.class, () -> {
+            sockService.registerOutcome(sockRequestDto.getColor(),
+                    sockRequestDto.getCottonPercentage(), sockRequestDto.getQuantity());
+            return ResponseEntity.ok("Отпуск носков успешно зарегистрирован.");
+        });
+    }
+
+    @Operation(summary = "Поток изменений остатков",
+            description = "SSE-поток изменений после коммита: поступления, отпуски, обновления и загрузки файлов. " +
+                    "Для продолжения после разрыва передаётся курсор последнего полученного события")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+                    @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                            schema = @Schema(implementation = InventoryChangeDto.class))
+            })
+    })
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestParam(required = false) @Schema(description = "Фильтр по цветам", example = "red")
+            List<String> color,
+            @RequestParam(required = false) @Schema(description = "Курсор последнего полученного события")
+            Long cursor,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return changeFeedService.subscribe(color, cursor != null ? cursor : lastEventId);
+    }
+
+    @Operation(summary = "Статистика кеша носков",
+            description = "Попадания и промахи кеша сущностей и кеша естественных ключей (цвет, процент хлопка) " +
+                    "этого экземпляра приложения")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CacheStatisticsDto.class))
+            })
+    })
+    @GetMapping("/cache/stats")
+    public ResponseEntity<List<CacheStatisticsDto>> getCacheStatistics() {
+        return ResponseEntity.ok(cacheStatisticsService.getStatistics());
+    }
+
+    @Operation(summary = "Позиции ниже порога дозаказа",
+            description = "Незакрытые уведомления: позиции, остаток которых опустился ниже порога и ещё не вернулся к нему. " +
+                    "Если слежение за порогами выключено, список пуст")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ok", content = {
+                    @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = LowStockAlertDto.class))
+            })
+    })
+    @GetMapping("/alerts")
+    public ResponseEntity<List<LowStockAlertDto>> getLowStockAlerts() {
+        LowStockAlertService service = lowStockAlertService.getIfAvailable();
+        return ResponseEntity.ok(service != null ? service.getActiveAlerts() : List.of());
     }
 }
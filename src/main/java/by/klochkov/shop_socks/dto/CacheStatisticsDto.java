@@ -0,0 +1,10 @@
+package by.klochkov.shop_socks.dto;
+
+public record CacheStatisticsDto(
+        String region,
+        long size,
+        long hits,
+        long misses,
+        double hitRate,
+        long evictions) {
+}
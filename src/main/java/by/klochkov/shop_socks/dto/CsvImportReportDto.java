@@ -0,0 +1,11 @@
+package by.klochkov.shop_socks.dto;
+
+import java.util.List;
+
+public record CsvImportReportDto(
+        long totalRows,
+        long importedRows,
+        long rejectedRows,
+        boolean rejectsTruncated,
+        List<CsvRejectedRowDto> rejects) {
+}
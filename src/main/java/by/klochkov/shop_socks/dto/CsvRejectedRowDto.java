@@ -0,0 +1,7 @@
+package by.klochkov.shop_socks.dto;
+
+public record CsvRejectedRowDto(
+        long line,
+        String content,
+        String reason) {
+}
@@ -0,0 +1,11 @@
+package by.klochkov.shop_socks.dto;
+
+/**
+ * Поступление, принятое в журнал: количество — из запроса, остаток станет известен после переноса в БД.
+ */
+public record IncomeAcceptedDto(
+        long sequence,
+        String color,
+        Integer cottonPercentage,
+        Integer requestedQuantity) {
+}
@@ -0,0 +1,16 @@
+package by.klochkov.shop_socks.dto;
+
+import by.klochkov.shop_socks.event.InventoryChangeType;
+
+import java.time.Instant;
+
+public record InventoryChangeDto(
+        long cursor,
+        Long sockId,
+        String color,
+        Integer cottonPercentage,
+        Integer previousQuantity,
+        Integer quantity,
+        InventoryChangeType type,
+        Instant occurredAt) {
+}
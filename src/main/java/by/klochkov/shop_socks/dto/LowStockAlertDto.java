@@ -0,0 +1,13 @@
+package by.klochkov.shop_socks.dto;
+
+import java.time.Instant;
+
+public record LowStockAlertDto(
+        Long sockId,
+        String color,
+        Integer cottonPercentage,
+        Integer threshold,
+        Integer quantity,
+        Instant raisedAt,
+        Instant clearedAt) {
+}
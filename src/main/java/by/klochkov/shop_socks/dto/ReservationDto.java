@@ -0,0 +1,14 @@
+package by.klochkov.shop_socks.dto;
+
+import by.klochkov.shop_socks.model.ReservationStatus;
+
+import java.time.Instant;
+
+public record ReservationDto(
+        Long id,
+        String color,
+        Integer cottonPercentage,
+        Integer quantity,
+        ReservationStatus status,
+        Instant expiresAt) {
+}
@@ -0,0 +1,30 @@
+package by.klochkov.shop_socks.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+@Schema(description = "DTO для резервирования носков")
+public record ReservationRequestDto(
+        @Schema(description = "Цвет носков", example = "red")
+        @NotBlank(message = "Цвет не может быть пустым.")
+        String color,
+
+        @Schema(description = "Процент содержания хлопка", example = "75")
+        @NotNull(message = "Процент хлопка не может быть пустым.")
+        @Min(value = 0, message = "Процент хлопка не может быть меньше 0.")
+        @Max(value = 100, message = "Процент хлопка не может быть больше 100.")
+        Integer cottonPercentage,
+
+        @Schema(description = "Количество носков", example = "2")
+        @NotNull(message = "Количество не может быть пустым.")
+        @Min(value = 1, message = "Количество должно быть больше 0.")
+        Integer quantity,
+
+        @Schema(description = "Время удержания резерва в секундах", example = "900")
+        @Min(value = 1, message = "Время удержания должно быть больше 0.")
+        Long ttlSeconds
+) {}
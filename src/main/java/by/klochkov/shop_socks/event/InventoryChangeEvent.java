@@ -0,0 +1,13 @@
+package by.klochkov.shop_socks.event;
+
+/**
+ * Изменение остатка одной позиции, публикуется внутри транзакции и обрабатывается после коммита.
+ */
+public record InventoryChangeEvent(
+        Long sockId,
+        String color,
+        Integer cottonPercentage,
+        Integer previousQuantity,
+        Integer quantity,
+        InventoryChangeType type) {
+}
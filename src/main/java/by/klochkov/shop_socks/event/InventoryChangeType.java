@@ -0,0 +1,8 @@
+package by.klochkov.shop_socks.event;
+
+public enum InventoryChangeType {
+    INCOME,
+    OUTCOME,
+    UPDATE,
+    IMPORT
+}
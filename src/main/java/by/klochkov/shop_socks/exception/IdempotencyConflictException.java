@@ -0,0 +1,7 @@
+package by.klochkov.shop_socks.exception;
+
+public class IdempotencyConflictException extends RuntimeException {
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
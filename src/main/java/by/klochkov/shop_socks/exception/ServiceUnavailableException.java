@@ -0,0 +1,7 @@
+package by.klochkov.shop_socks.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
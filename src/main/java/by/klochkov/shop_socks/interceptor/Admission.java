@@ -0,0 +1,15 @@
+package by.klochkov.shop_socks.interceptor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Помечает обработчик, который проходит через {@link AdmissionControlInterceptor} в указанной полосе.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Admission {
+    AdmissionLane value();
+}
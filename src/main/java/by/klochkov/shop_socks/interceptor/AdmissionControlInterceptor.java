@@ -0,0 +1,88 @@
+package by.klochkov.shop_socks.interceptor;
+
+import by.klochkov.shop_socks.config.AdmissionProperties;
+import by.klochkov.shop_socks.exception.TooManyRequestsException;
+import by.klochkov.shop_socks.util.AimdLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Пропускает к обработчикам с {@link Admission} не больше запросов, чем позволяет адаптивный лимит
+ * их полосы, остальным сразу отвечает 429. Импорт CSV дополнительно уступает полосе записи,
+ * когда та почти заполнена.
+ */
+@Slf4j
+public class AdmissionControlInterceptor implements HandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".permit";
+
+    private final AdmissionProperties properties;
+    private final Map<AdmissionLane, AimdLimiter> limiters = new EnumMap<>(AdmissionLane.class);
+
+    public AdmissionControlInterceptor(AdmissionProperties properties) {
+        this.properties = properties;
+        limiters.put(AdmissionLane.WRITE, createLimiter(properties.getWrite()));
+        limiters.put(AdmissionLane.CSV_IMPORT, createLimiter(properties.getCsvImport()));
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        Admission admission = handlerMethod.getMethodAnnotation(Admission.class);
+        if (admission == null) {
+            return true;
+        }
+
+        AdmissionLane lane = admission.value();
+        AimdLimiter limiter = limiters.get(lane);
+        if (lane == AdmissionLane.CSV_IMPORT
+                && limiters.get(AdmissionLane.WRITE).utilization() >= properties.getImportYieldUtilization()) {
+            throw reject(lane, "Сервер занят обработкой поступлений и отпусков, повторите загрузку позже.");
+        }
+        if (!limiter.tryAcquire()) {
+            throw reject(lane, "Слишком много одновременных запросов, повторите позже.");
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, new Permit(limiter, System.nanoTime()));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object permit = request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit instanceof Permit acquired) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            boolean failed = ex != null || response.getStatus() >= 500;
+            acquired.limiter().release(System.nanoTime() - acquired.startNanos(), failed);
+        }
+    }
+
+    public AimdLimiter getLimiter(AdmissionLane lane) {
+        return limiters.get(lane);
+    }
+
+    private TooManyRequestsException reject(AdmissionLane lane, String message) {
+        AimdLimiter limiter = limiters.get(lane);
+        log.debug("Запрос в полосе {} отклонён: limit={}, inFlight={}", lane, limiter.getLimit(), limiter.getInFlight());
+        AdmissionProperties.Lane laneProperties = lane == AdmissionLane.WRITE
+                ? properties.getWrite()
+                : properties.getCsvImport();
+        return new TooManyRequestsException(message, Math.max(1, laneProperties.getRetryAfter().toSeconds()));
+    }
+
+    private static AimdLimiter createLimiter(AdmissionProperties.Lane lane) {
+        return new AimdLimiter(lane.getInitialLimit(), lane.getMinLimit(), lane.getMaxLimit(),
+                lane.getLatencyThreshold().toNanos(), lane.getBackoffRatio());
+    }
+
+    private record Permit(AimdLimiter limiter, long startNanos) {
+    }
+}
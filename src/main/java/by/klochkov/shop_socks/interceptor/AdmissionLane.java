@@ -0,0 +1,6 @@
+package by.klochkov.shop_socks.interceptor;
+
+public enum AdmissionLane {
+    WRITE,
+    CSV_IMPORT
+}
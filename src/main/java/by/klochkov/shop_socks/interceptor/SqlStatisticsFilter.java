@@ -0,0 +1,55 @@
+package by.klochkov.shop_socks.interceptor;
+
+import by.klochkov.shop_socks.util.SqlStatementCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.function.BiConsumer;
+
+/**
+ * Отладочные заголовки с числом обращений к БД и их суммарным временем за запрос. Для ответов
+ * с телом заголовки выставляет {@link SqlStatisticsHeaderAdvice} перед записью тела, здесь —
+ * для ответов без тела.
+ */
+@Slf4j
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+
+    public static final String STATEMENTS_HEADER = "X-Sql-Statements";
+    public static final String TIME_HEADER = "X-Sql-Time-Ms";
+    private static final String RECORDING_ATTRIBUTE = SqlStatisticsFilter.class.getName() + ".recording";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try (SqlStatementCounter.Recording recording = SqlStatementCounter.start()) {
+            request.setAttribute(RECORDING_ATTRIBUTE, recording);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                request.removeAttribute(RECORDING_ATTRIBUTE);
+                if (!response.isCommitted()) {
+                    writeHeaders(recording, response::setHeader);
+                }
+                log.debug("{} {}: SQL {}, {} мс", request.getMethod(), request.getRequestURI(),
+                        recording.getStatements(), recording.getElapsedMillis());
+            }
+        }
+    }
+
+    static void writeHeaders(ServletRequest request, BiConsumer<String, String> headers) {
+        if (request.getAttribute(RECORDING_ATTRIBUTE) instanceof SqlStatementCounter.Recording recording) {
+            writeHeaders(recording, headers);
+        }
+    }
+
+    private static void writeHeaders(SqlStatementCounter.Recording recording, BiConsumer<String, String> headers) {
+        headers.accept(STATEMENTS_HEADER, String.valueOf(recording.getStatements()));
+        headers.accept(TIME_HEADER, String.valueOf(recording.getElapsedMillis()));
+    }
+}
@@ -0,0 +1,11 @@
+package by.klochkov.shop_socks.mapper;
+
+import by.klochkov.shop_socks.dto.ReservationDto;
+import by.klochkov.shop_socks.model.Reservation;
+import org.mapstruct.Mapper;
+import org.mapstruct.ReportingPolicy;
+
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface ReservationMapper {
+    ReservationDto toDto(Reservation reservation);
+}
@@ -0,0 +1,154 @@
+package by.klochkov.shop_socks.mapper;
+
+import by.klochkov.shop_socks.controller.GlobalExceptionHandler;
+import by.klochkov.shop_socks.dto.CsvImportReportDto;
+import by.klochkov.shop_socks.dto.CsvRejectedRowDto;
+import by.klochkov.shop_socks.dto.IncomeAcceptedDto;
+import by.klochkov.shop_socks.dto.SockDto;
+import by.klochkov.shop_socks.dto.SockRequestDto;
+import by.klochkov.shop_socks.dto.UpdateSockDto;
+import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.proto.CsvImportReport;
+import by.klochkov.shop_socks.proto.CsvRejectedRow;
+import by.klochkov.shop_socks.proto.ErrorArrayResponse;
+import by.klochkov.shop_socks.proto.ErrorResponse;
+import by.klochkov.shop_socks.proto.IncomeAccepted;
+import by.klochkov.shop_socks.proto.SockQuantity;
+import by.klochkov.shop_socks.proto.SockRequest;
+import by.klochkov.shop_socks.proto.TextMessage;
+import com.google.protobuf.Message;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Перевод DTO в сообщения из socks.proto и обратно. MapStruct здесь не подходит: у сгенерированных
+ * классов нет сеттеров и пустых значений, незаполненные поля просто не передаются.
+ */
+@Component
+public class SockProtoMapper {
+
+    private static final Set<Class<?>> READABLE = Set.of(SockRequestDto.class, UpdateSockDto.class);
+    private static final Set<Class<?>> WRITABLE = Set.of(SockDto.class, Sock.class, Integer.class, String.class,
+            IncomeAcceptedDto.class, CsvImportReportDto.class, GlobalExceptionHandler.ErrorResponse.class,
+            GlobalExceptionHandler.ErrorArrayResponse.class);
+
+    public boolean canRead(Class<?> type) {
+        return READABLE.contains(type);
+    }
+
+    public boolean canWrite(Class<?> type) {
+        return WRITABLE.contains(type);
+    }
+
+    public Object fromMessage(SockRequest request, Class<?> type) {
+        String color = request.getColor().isEmpty() ? null : request.getColor();
+        Integer cottonPercentage = request.hasCottonPercentage() ? request.getCottonPercentage() : null;
+        Integer quantity = request.hasQuantity() ? request.getQuantity() : null;
+        if (type == UpdateSockDto.class) {
+            return new UpdateSockDto(color, cottonPercentage, quantity);
+        }
+        return new SockRequestDto(color, cottonPercentage, quantity);
+    }
+
+    public SockRequest toMessage(SockRequestDto dto) {
+        SockRequest.Builder builder = SockRequest.newBuilder();
+        if (dto.getColor() != null) {
+            builder.setColor(dto.getColor());
+        }
+        if (dto.getCottonPercentage() != null) {
+            builder.setCottonPercentage(dto.getCottonPercentage());
+        }
+        if (dto.getQuantity() != null) {
+            builder.setQuantity(dto.getQuantity());
+        }
+        return builder.build();
+    }
+
+    public Message toMessage(Object value) {
+        if (value instanceof SockDto dto) {
+            return toMessage(null, dto.color(), dto.cottonPercentage(), dto.quantity());
+        }
+        if (value instanceof Sock sock) {
+            return toMessage(sock.getId(), sock.getColor(), sock.getCottonPercentage(), sock.getQuantity());
+        }
+        if (value instanceof IncomeAcceptedDto accepted) {
+            return IncomeAccepted.newBuilder()
+                    .setSequence(accepted.sequence())
+                    .setColor(accepted.color())
+                    .setCottonPercentage(accepted.cottonPercentage())
+                    .setRequestedQuantity(accepted.requestedQuantity())
+                    .build();
+        }
+        if (value instanceof Integer quantity) {
+            return SockQuantity.newBuilder().setQuantity(quantity).build();
+        }
+        if (value instanceof String text) {
+            return TextMessage.newBuilder().setMessage(text).build();
+        }
+        if (value instanceof CsvImportReportDto report) {
+            return toMessage(report);
+        }
+        if (value instanceof GlobalExceptionHandler.ErrorResponse error) {
+            ErrorResponse.Builder builder = ErrorResponse.newBuilder().setStatus(error.getStatus());
+            if (error.getError() != null) {
+                builder.setError(error.getError());
+            }
+            if (error.getMessage() != null) {
+                builder.setMessage(error.getMessage());
+            }
+            return builder.build();
+        }
+        if (value instanceof GlobalExceptionHandler.ErrorArrayResponse error) {
+            ErrorArrayResponse.Builder builder = ErrorArrayResponse.newBuilder().setStatus(error.getStatus());
+            if (error.getError() != null) {
+                builder.setError(error.getError());
+            }
+            if (error.getMessage() != null) {
+                builder.addAllMessage(Arrays.asList(error.getMessage()));
+            }
+            return builder.build();
+        }
+        throw new IllegalArgumentException("Нет protobuf-сообщения для " + value.getClass().getName());
+    }
+
+    private static by.klochkov.shop_socks.proto.Sock toMessage(Long id, String color, Integer cottonPercentage,
+                                                               Integer quantity) {
+        by.klochkov.shop_socks.proto.Sock.Builder builder = by.klochkov.shop_socks.proto.Sock.newBuilder();
+        if (id != null) {
+            builder.setId(id);
+        }
+        if (color != null) {
+            builder.setColor(color);
+        }
+        if (cottonPercentage != null) {
+            builder.setCottonPercentage(cottonPercentage);
+        }
+        if (quantity != null) {
+            builder.setQuantity(quantity);
+        }
+        return builder.build();
+    }
+
+    private static CsvImportReport toMessage(CsvImportReportDto report) {
+        CsvImportReport.Builder builder = CsvImportReport.newBuilder()
+                .setTotalRows(report.totalRows())
+                .setImportedRows(report.importedRows())
+                .setRejectedRows(report.rejectedRows())
+                .setRejectsTruncated(report.rejectsTruncated());
+        if (report.rejects() != null) {
+            for (CsvRejectedRowDto reject : report.rejects()) {
+                CsvRejectedRow.Builder row = CsvRejectedRow.newBuilder().setLine(reject.line());
+                if (reject.content() != null) {
+                    row.setContent(reject.content());
+                }
+                if (reject.reason() != null) {
+                    row.setReason(reject.reason());
+                }
+                builder.addRejects(row);
+            }
+        }
+        return builder.build();
+    }
+}
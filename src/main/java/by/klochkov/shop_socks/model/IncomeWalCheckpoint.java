@@ -0,0 +1,28 @@
+package by.klochkov.shop_socks.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Номер последней записи журнала поступлений, применённой к БД. Обновляется в той же транзакции,
+ * что и остатки, поэтому повторное применение после перезапуска пропускает уже перенесённые записи.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "income_wal_checkpoints")
+public class IncomeWalCheckpoint {
+    @Id
+    private String walId;
+
+    @Column(nullable = false)
+    private Long appliedSequence;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+}
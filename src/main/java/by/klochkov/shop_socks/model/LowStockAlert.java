@@ -0,0 +1,46 @@
+package by.klochkov.shop_socks.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Пересечение порога дозаказа: создаётся, когда остаток позиции опускается ниже порога, и закрывается,
+ * когда остаток снова не ниже порога. Незакрытое уведомление у позиции одно.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "low_stock_alerts")
+public class LowStockAlert {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long sockId;
+
+    @Column(nullable = false)
+    private String color;
+
+    @Column(nullable = false)
+    private Integer cottonPercentage;
+
+    @Column(nullable = false)
+    private Integer threshold;
+
+    /**
+     * Остаток в момент пересечения порога.
+     */
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Column(nullable = false)
+    private Instant raisedAt;
+
+    private Instant clearedAt;
+}
@@ -0,0 +1,8 @@
+package by.klochkov.shop_socks.model;
+
+public enum ReservationStatus {
+    ACTIVE,
+    CONFIRMED,
+    CANCELLED,
+    EXPIRED
+}
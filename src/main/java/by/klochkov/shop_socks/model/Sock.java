@@ -1,11 +1,23 @@
 package by.klochkov.shop_socks.model;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.OptimisticLockType;
+import org.hibernate.annotations.OptimisticLocking;
 
 import javax.persistence.*;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 
+/**
+ * Таблица секционирована по хешу color. {@link OptimisticLockType#ALL} добавляет в условие UPDATE прежние
+ * значения всех колонок, в том числе color, поэтому обновление читает одну секцию, а не ищет id во всех.
+ * Заодно обновление поверх устаревшего состояния не проходит, а падает с ошибкой оптимистичной блокировки.
+ */
 @Getter
 @Setter
 @Builder
@@ -13,14 +25,24 @@ import javax.validation.constraints.Min;
 @AllArgsConstructor
 @Entity
 @Table(name = "socks")
+@DynamicUpdate
+@OptimisticLocking(type = OptimisticLockType.ALL)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NaturalIdCache
 public class Sock {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /**
+     * Цвет и процент хлопка меняются через {@code updateSock}, поэтому естественный ключ изменяемый:
+     * Hibernate сам переносит запись в кеше естественных ключей со старого ключа на новый.
+     */
+    @NaturalId(mutable = true)
     @Column(nullable = false)
     private String color;
 
+    @NaturalId(mutable = true)
     @Column(nullable = false)
     @Min(0)
     @Max(100)
@@ -0,0 +1,17 @@
+package by.klochkov.shop_socks.repository;
+
+import by.klochkov.shop_socks.model.IncomeWalCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+public interface IncomeWalCheckpointRepository extends JpaRepository<IncomeWalCheckpoint, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM IncomeWalCheckpoint c WHERE c.walId = :walId")
+    Optional<IncomeWalCheckpoint> findForUpdate(@Param("walId") String walId);
+}
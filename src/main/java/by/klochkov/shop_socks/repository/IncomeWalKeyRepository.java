@@ -0,0 +1,16 @@
+package by.klochkov.shop_socks.repository;
+
+import by.klochkov.shop_socks.model.IncomeWalKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface IncomeWalKeyRepository extends JpaRepository<IncomeWalKey, String> {
+
+    @Modifying
+    @Query("DELETE FROM IncomeWalKey k WHERE k.appliedAt < :before")
+    int deleteAppliedBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,43 @@
+package by.klochkov.shop_socks.repository;
+
+import by.klochkov.shop_socks.model.LowStockAlert;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.List;
+
+public interface LowStockAlertRepository extends JpaRepository<LowStockAlert, Long> {
+
+    List<LowStockAlert> findByClearedAtIsNullOrderByRaisedAt();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<LowStockAlert> findBySockIdAndClearedAtIsNull(Long sockId);
+
+    /**
+     * Создаёт незакрытое уведомление, если у носков его ещё нет: повтор отсекает частичный
+     * уникальный индекс по sock_id среди незакрытых уведомлений.
+     *
+     * Таблица указана явно: иначе нативная запись сбрасывает весь кеш второго уровня, включая носки.
+     *
+     * @return 1, если уведомление создано, иначе 0
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = "org.hibernate.query.native.spaces", value = "low_stock_alerts"))
+    @Query(value = "INSERT INTO low_stock_alerts (sock_id, color, cotton_percentage, threshold, quantity, raised_at) " +
+            "VALUES (:sockId, :color, :cottonPercentage, :threshold, :quantity, :raisedAt) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(
+            @Param("sockId") Long sockId,
+            @Param("color") String color,
+            @Param("cottonPercentage") Integer cottonPercentage,
+            @Param("threshold") Integer threshold,
+            @Param("quantity") Integer quantity,
+            @Param("raisedAt") Instant raisedAt);
+}
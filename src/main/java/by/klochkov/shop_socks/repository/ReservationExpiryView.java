@@ -0,0 +1,9 @@
+package by.klochkov.shop_socks.repository;
+
+import java.time.Instant;
+
+public interface ReservationExpiryView {
+    Long getId();
+
+    Instant getExpiresAt();
+}
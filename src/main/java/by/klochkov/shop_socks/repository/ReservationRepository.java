@@ -0,0 +1,53 @@
+package by.klochkov.shop_socks.repository;
+
+import by.klochkov.shop_socks.model.Reservation;
+import by.klochkov.shop_socks.model.ReservationStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+
+    @Query("SELECT COALESCE(SUM(r.quantity), 0) " +
+            "FROM Reservation r " +
+            "WHERE r.color = :color " +
+            "AND r.cottonPercentage = :cottonPercentage " +
+            "AND r.status = :status " +
+            "AND r.expiresAt > :now")
+    int getActiveQuantity(
+            @Param("color") String color,
+            @Param("cottonPercentage") Integer cottonPercentage,
+            @Param("status") ReservationStatus status,
+            @Param("now") Instant now);
+
+    @Query("SELECT COALESCE(SUM(r.quantity), 0) " +
+            "FROM Reservation r " +
+            "WHERE r.color = :color " +
+            "AND r.cottonPercentage >= :minCotton " +
+            "AND r.cottonPercentage <= :maxCotton " +
+            "AND r.status = :status " +
+            "AND r.expiresAt > :now")
+    int getActiveQuantityByColorAndCottonPercentageRange(
+            @Param("color") String color,
+            @Param("minCotton") Integer minCotton,
+            @Param("maxCotton") Integer maxCotton,
+            @Param("status") ReservationStatus status,
+            @Param("now") Instant now);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<ReservationExpiryView> findByStatus(ReservationStatus status);
+
+    @Modifying
+    @Query("UPDATE Reservation r SET r.status = :newStatus WHERE r.id IN :ids AND r.status = :currentStatus")
+    int updateStatus(
+            @Param("ids") Collection<Long> ids,
+            @Param("currentStatus") ReservationStatus currentStatus,
+            @Param("newStatus") ReservationStatus newStatus);
+}
@@ -0,0 +1,16 @@
+package by.klochkov.shop_socks.repository;
+
+import by.klochkov.shop_socks.model.Sock;
+
+import java.util.Optional;
+
+public interface SockNaturalIdRepository {
+
+    /**
+     * Поиск по естественному ключу через кеш второго уровня: при попадании не выполняется ни одного запроса.
+     * Кеш локален для экземпляра, количество в найденной записи может быть устаревшим, поэтому изменения
+     * остатка читают строку через {@link SockRepository#findForUpdate}, а из кеша читаются только
+     * {@code GET /api/socks/sku} и проверка занятости ключа при обновлении.
+     */
+    Optional<Sock> findByColorAndCottonPercentage(String color, Integer cottonPercentage);
+}
@@ -0,0 +1,25 @@
+package by.klochkov.shop_socks.repository;
+
+import by.klochkov.shop_socks.model.Sock;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Optional;
+
+public class SockNaturalIdRepositoryImpl implements SockNaturalIdRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Sock> findByColorAndCottonPercentage(String color, Integer cottonPercentage) {
+        return entityManager.unwrap(Session.class)
+                .byNaturalId(Sock.class)
+                .using("color", color)
+                .using("cottonPercentage", cottonPercentage)
+                .loadOptional();
+    }
+}
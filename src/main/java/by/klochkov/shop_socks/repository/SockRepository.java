@@ -2,14 +2,65 @@ package by.klochkov.shop_socks.repository;
 
 import by.klochkov.shop_socks.model.Sock;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-public interface SockRepository extends JpaRepository<Sock, Long> {
+/**
+ * Таблица socks секционирована по хешу color, поэтому каждый запрос по ней содержит условие
+ * {@code color = :color}: так планировщик читает одну секцию вместо всех. Обновления, которые
+ * выполняет Hibernate, тоже содержат прежний color, см. {@link Sock}.
+ */
+public interface SockRepository extends JpaRepository<Sock, Long>, SockNaturalIdRepository {
 
-    Optional<Sock> findByColorAndCottonPercentage(String color, Integer cottonPercentage);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Sock s WHERE s.color = :color AND s.cottonPercentage = :cottonPercentage")
+    Optional<Sock> findForUpdate(
+            @Param("color") String color,
+            @Param("cottonPercentage") Integer cottonPercentage);
+
+    /**
+     * Вставка новой позиции. Ключ (color, cotton_percentage) уникален: если те же носки одновременно
+     * вставляет другая транзакция, запрос дожидается её коммита и ничего не вставляет.
+     *
+     * @return 1, если позиция вставлена, иначе 0
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = "org.hibernate.query.native.spaces", value = "socks"))
+    @Query(value = "INSERT INTO socks (color, cotton_percentage, quantity) " +
+            "VALUES (:color, :cottonPercentage, :quantity) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(
+            @Param("color") String color,
+            @Param("cottonPercentage") Integer cottonPercentage,
+            @Param("quantity") Integer quantity);
+
+    /**
+     * Пачка позиций для загрузки CSV одним запросом. Условие по парам не поддерживается JPQL, поэтому
+     * выбираются все сочетания цветов и процентов хлопка пачки, лишние строки отбрасывает вызывающий.
+     * Строки блокируются по порядку id, чтобы параллельные загрузки не блокировали друг друга крест-накрест.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Sock s WHERE s.color IN :colors AND s.cottonPercentage IN :cottonPercentages ORDER BY s.id")
+    List<Sock> findAllForUpdate(
+            @Param("colors") Collection<String> colors,
+            @Param("cottonPercentages") Collection<Integer> cottonPercentages);
+
+    /**
+     * Единственный запрос без color: для {@code updateSock}, где известен только id. Он проверяет индекс
+     * первичного ключа в каждой секции; само обновление после него идёт в одну секцию.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Sock s WHERE s.id = :id")
+    Optional<Sock> findByIdForUpdate(@Param("id") Long id);
 
     @Query("SELECT COALESCE(SUM(s.quantity), 0) " +
             "FROM Sock s " +
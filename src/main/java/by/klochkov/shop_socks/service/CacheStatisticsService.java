@@ -0,0 +1,38 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.config.SockCacheConfig;
+import by.klochkov.shop_socks.dto.CacheStatisticsDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import javax.cache.CacheManager;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class CacheStatisticsService {
+
+    private final CacheManager sockCacheManager;
+
+    /**
+     * Статистика регионов кеша носков с момента старта экземпляра.
+     */
+    public List<CacheStatisticsDto> getStatistics() {
+        return Stream.of(SockCacheConfig.SOCK_REGION, SockCacheConfig.SOCK_NATURAL_ID_REGION)
+                .map(sockCacheManager::getCache)
+                .filter(Objects::nonNull)
+                .map(CacheStatisticsService::toDto)
+                .toList();
+    }
+
+    private static CacheStatisticsDto toDto(javax.cache.Cache<Object, Object> cache) {
+        Cache<?, ?> caffeine = cache.unwrap(Cache.class);
+        CacheStats stats = caffeine.stats();
+        return new CacheStatisticsDto(cache.getName(), caffeine.estimatedSize(), stats.hitCount(),
+                stats.missCount(), stats.hitRate(), stats.evictionCount());
+    }
+}
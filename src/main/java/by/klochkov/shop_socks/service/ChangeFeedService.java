@@ -0,0 +1,209 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.config.ChangeFeedProperties;
+import by.klochkov.shop_socks.dto.InventoryChangeDto;
+import by.klochkov.shop_socks.event.InventoryChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Рассылает закоммиченные изменения остатков подписчикам SSE. У каждого подписчика своя ограниченная
+ * очередь: медленный клиент, не успевающий её разбирать, отключается и продолжает с курсора.
+ */
+@Service
+@Slf4j
+public class ChangeFeedService {
+
+    public static final String CHANGE_EVENT_NAME = "inventory-change";
+    public static final String RESET_EVENT_NAME = "reset";
+
+    private final ChangeFeedProperties properties;
+    private final ExecutorService dispatcher;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<InventoryChangeDto> replayBuffer = new ArrayDeque<>();
+    private final Object lock = new Object();
+
+    /**
+     * Курсор начинается с текущего времени, чтобы курсоры клиентов оставались возрастающими после перезапуска.
+     */
+    private long lastCursor = System.currentTimeMillis() * 1000;
+
+    public ChangeFeedService(ChangeFeedProperties properties) {
+        this.properties = properties;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(properties.getDispatchThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "change-feed-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @TransactionalEventListener
+    public void onInventoryChange(InventoryChangeEvent event) {
+        synchronized (lock) {
+            InventoryChangeDto change = new InventoryChangeDto(++lastCursor, event.sockId(), event.color(),
+                    event.cottonPercentage(), event.previousQuantity(), event.quantity(), event.type(), Instant.now());
+            replayBuffer.addLast(change);
+            if (replayBuffer.size() > properties.getReplayBufferSize()) {
+                replayBuffer.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.accepts(change)) {
+                    enqueue(subscriber, change);
+                }
+            }
+        }
+    }
+
+    /**
+     * Подписывает клиента на изменения. Если передан курсор, сначала отправляются пропущенные события;
+     * если они уже вытеснены из буфера, клиент получает событие {@value #RESET_EVENT_NAME} и должен
+     * перечитать остатки.
+     */
+    public SseEmitter subscribe(Collection<String> colors, Long cursor) {
+        SseEmitter emitter = createEmitter(properties.getEmitterTimeout().toMillis());
+        Set<String> colorFilter = colors == null ? Set.of() : colors.stream()
+                .map(String::trim)
+                .filter(color -> !color.isEmpty())
+                .collect(Collectors.toSet());
+        Subscriber subscriber = new Subscriber(emitter, colorFilter,
+                new ArrayBlockingQueue<>(properties.getSubscriberBufferSize()));
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+
+        // отправка начинается только после события reset, чтобы оно пришло раньше остальных
+        subscriber.draining().set(true);
+        boolean reset = false;
+        synchronized (lock) {
+            if (cursor != null) {
+                InventoryChangeDto oldest = replayBuffer.peekFirst();
+                long firstAvailable = oldest == null ? lastCursor + 1 : oldest.cursor();
+                reset = cursor + 1 < firstAvailable;
+                for (InventoryChangeDto change : replayBuffer) {
+                    if (change.cursor() > cursor && subscriber.accepts(change) && !subscriber.queue().offer(change)) {
+                        reset = true;
+                        subscriber.queue().clear();
+                        break;
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        }
+
+        if (reset) {
+            try {
+                emitter.send(SseEmitter.event().name(RESET_EVENT_NAME).data(lastCursor));
+            } catch (IOException e) {
+                subscribers.remove(subscriber);
+                emitter.completeWithError(e);
+                return emitter;
+            }
+        }
+        subscriber.draining().set(false);
+        scheduleDrain(subscriber);
+        log.debug("Новый подписчик на изменения, цвета: {}, курсор: {}", colorFilter, cursor);
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${shop-socks.change-feed.heartbeat-interval:PT15S}")
+    public void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.emitter().send(SseEmitter.event().comment("keep-alive"));
+            } catch (IOException | IllegalStateException e) {
+                drop(subscriber, "соединение закрыто");
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter().complete());
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * Тесты подменяют emitter, чтобы видеть отправленные события без HTTP-соединения.
+     */
+    protected SseEmitter createEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    private void enqueue(Subscriber subscriber, InventoryChangeDto change) {
+        if (!subscriber.queue().offer(change)) {
+            drop(subscriber, "переполнен буфер");
+            return;
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (!subscriber.queue().isEmpty() && subscriber.draining().compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            InventoryChangeDto change;
+            while ((change = subscriber.queue().poll()) != null) {
+                subscriber.emitter().send(SseEmitter.event()
+                        .id(String.valueOf(change.cursor()))
+                        .name(CHANGE_EVENT_NAME)
+                        .data(change, MediaType.APPLICATION_JSON));
+            }
+        } catch (IOException | IllegalStateException e) {
+            drop(subscriber, "ошибка отправки");
+            return;
+        } finally {
+            subscriber.draining().set(false);
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void drop(Subscriber subscriber, String reason) {
+        if (subscribers.remove(subscriber)) {
+            log.info("Подписчик на изменения отключён: {}", reason);
+            subscriber.queue().clear();
+            subscriber.emitter().complete();
+        }
+    }
+
+    private record Subscriber(SseEmitter emitter, Set<String> colors, BlockingQueue<InventoryChangeDto> queue,
+                              AtomicBoolean draining) {
+
+        Subscriber(SseEmitter emitter, Set<String> colors, BlockingQueue<InventoryChangeDto> queue) {
+            this(emitter, colors, queue, new AtomicBoolean());
+        }
+
+        boolean accepts(InventoryChangeDto change) {
+            return colors.isEmpty() || colors.contains(change.color());
+        }
+    }
+}
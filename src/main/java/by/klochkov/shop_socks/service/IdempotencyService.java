@@ -0,0 +1,197 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.config.IdempotencyProperties;
+import by.klochkov.shop_socks.exception.DataProcessingException;
+import by.klochkov.shop_socks.exception.IdempotencyConflictException;
+import by.klochkov.shop_socks.model.IdempotencyRecord;
+import by.klochkov.shop_socks.repository.IdempotencyRecordRepository;
+import by.klochkov.shop_socks.util.ExpiringLruCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final IdempotencyProperties properties;
+    private final ExpiringLruCache<String, IdempotencyRecord> cache;
+    private final Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              IdempotencyProperties properties) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.cache = new ExpiringLruCache<>(properties.getMaxEntries(), properties.getTtl());
+    }
+
+    public static String fingerprint(String operation, Object... parts) {
+        String raw = operation + ":" + Arrays.stream(parts)
+                .map(String::valueOf)
+                .collect(Collectors.joining("|"));
+        return DigestUtils.md5DigestAsHex(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Выполняет действие один раз для ключа. Ответ сохраняется в той же транзакции, что и изменения
+     * склада, поэтому повтор после таймаута возвращает сохранённый ответ, не вызывая действие снова.
+     * Без ключа действие просто выполняется.
+     */
+    public <T> ResponseEntity<T> execute(String key, String fingerprint, Class<T> bodyType,
+                                         Supplier<ResponseEntity<T>> action) {
+        return execute(key, fingerprint, status -> bodyType, action);
+    }
+
+    /**
+     * То же, когда тип тела ответа зависит от кода, например 200 и 202 у поступления. Если тот же ключ
+     * одновременно обработал другой экземпляр, вставка записи нарушает первичный ключ: транзакция
+     * откатывается вместе с изменениями склада, а клиент получает 409 и при повторе — сохранённый ответ.
+     */
+    public <T> ResponseEntity<T> execute(String key, String fingerprint, IntFunction<Class<? extends T>> bodyTypes,
+                                         Supplier<ResponseEntity<T>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Длина " + IDEMPOTENCY_KEY_HEADER + " не может быть больше "
+                    + MAX_KEY_LENGTH + " символов.");
+        }
+
+        Optional<IdempotencyRecord> cached = cache.get(key);
+        if (cached.isPresent()) {
+            return replay(cached.get(), fingerprint, bodyTypes);
+        }
+
+        if (!inFlightKeys.add(key)) {
+            throw new IdempotencyConflictException("Запрос с ключом " + key + " уже выполняется.");
+        }
+        try {
+            return transactionTemplate.execute(status -> {
+                Optional<IdempotencyRecord> stored = idempotencyRecordRepository.findById(key);
+                if (stored.isPresent() && stored.get().getExpiresAt().isAfter(Instant.now())) {
+                    cacheRecord(stored.get());
+                    return replay(stored.get(), fingerprint, bodyTypes);
+                }
+                stored.ifPresent(expired -> {
+                    idempotencyRecordRepository.delete(expired);
+                    idempotencyRecordRepository.flush();
+                });
+
+                ResponseEntity<T> response = action.get();
+                IdempotencyRecord record = saveRecord(key, fingerprint, response);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        cacheRecord(record);
+                    }
+                });
+                return response;
+            });
+        } catch (DataIntegrityViolationException e) {
+            if (!idempotencyRecordRepository.existsById(key)) {
+                throw e;
+            }
+            throw new IdempotencyConflictException("Запрос с ключом " + key + " уже выполнен другим экземпляром, "
+                    + "повторите его, чтобы получить сохранённый ответ.");
+        } finally {
+            inFlightKeys.remove(key);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${shop-socks.idempotency.cleanup-interval:PT10M}")
+    public void removeExpired() {
+        Integer removed = transactionTemplate.execute(status ->
+                idempotencyRecordRepository.deleteExpired(Instant.now()));
+        log.debug("Удалено просроченных ключей идемпотентности: {}", removed);
+    }
+
+    /**
+     * Запись кешируется до своего срока, а не на полный срок от момента чтения: иначе запись, прочитанная
+     * из БД незадолго до истечения, повторялась бы из кеша ещё почти целый срок.
+     */
+    private void cacheRecord(IdempotencyRecord record) {
+        Duration remaining = Duration.between(Instant.now(), record.getExpiresAt());
+        if (!remaining.isNegative() && !remaining.isZero()) {
+            cache.put(record.getKey(), record, remaining);
+        }
+    }
+
+    private IdempotencyRecord saveRecord(String key, String fingerprint, ResponseEntity<?> response) {
+        Instant now = Instant.now();
+        IdempotencyRecord record = IdempotencyRecord.builder()
+                .key(key)
+                .fingerprint(fingerprint)
+                .responseStatus(response.getStatusCodeValue())
+                .responseBody(writeBody(response.getBody()))
+                .createdAt(now)
+                .expiresAt(now.plus(properties.getTtl()))
+                .build();
+        // вставка сразу, чтобы нарушение ключа пришло отсюда, а не из коммита
+        return idempotencyRecordRepository.saveAndFlush(record);
+    }
+
+    private <T> ResponseEntity<T> replay(IdempotencyRecord record, String fingerprint,
+                                         IntFunction<Class<? extends T>> bodyTypes) {
+        if (!record.getFingerprint().equals(fingerprint)) {
+            throw new IdempotencyConflictException("Ключ " + record.getKey()
+                    + " уже использован для другого запроса.");
+        }
+        log.debug("Повтор запроса с ключом {}, возвращается сохранённый ответ", record.getKey());
+        return ResponseEntity.status(record.getResponseStatus())
+                .header(REPLAYED_HEADER, "true")
+                .body(readBody(record.getResponseBody(), bodyTypes.apply(record.getResponseStatus())));
+    }
+
+    private String writeBody(Object body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new DataProcessingException("Не удалось сохранить ответ для повтора запроса.");
+        }
+    }
+
+    private <T> T readBody(String body, Class<T> bodyType) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(body, bodyType);
+        } catch (JsonProcessingException e) {
+            throw new DataProcessingException("Не удалось прочитать сохранённый ответ.");
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.config.IdempotencyProperties;
+import by.klochkov.shop_socks.config.IncomeWalProperties;
+import by.klochkov.shop_socks.exception.ServiceUnavailableException;
+import by.klochkov.shop_socks.model.IncomeWalCheckpoint;
+import by.klochkov.shop_socks.model.IncomeWalKey;
+import by.klochkov.shop_socks.repository.IncomeWalCheckpointRepository;
+import by.klochkov.shop_socks.repository.IncomeWalKeyRepository;
+import by.klochkov.shop_socks.util.MappedAppendLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Поступления через локальный журнал: {@link #append} подтверждает поступление, как только запись
+ * сброшена на диск, а фоновый поток переносит записи в БД пачками, складывая количество по позициям.
+ * Номер последней перенесённой записи хранится в БД вместе с остатками, поэтому после перезапуска
+ * журнал дочитывается с него и ни одна запись не применяется дважды. Остатки в БД при этом отстают
+ * от журнала на время переноса. Если пачка не переносится несколько раз подряд, записи переносятся
+ * по одной, а запись, которую перенести не удалось, уходит в карантинный файл, чтобы не держать остальные.
+ * <p>
+ * Запись хранит ключ идемпотентности запроса. Ответ с ключом сохраняется уже после записи в журнал, поэтому
+ * повтор после сбоя может попасть в журнал второй раз, в том числе другого экземпляра: при переносе запись
+ * с ключом из {@code income_wal_keys} пропускается.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "shop-socks.income-wal", name = "enabled", havingValue = "true")
+public class IncomeWalService {
+
+    public static final String SEQUENCE_HEADER = "Income-Log-Sequence";
+    private static final String WAL_ID_FILE = "wal.id";
+    private static final String QUARANTINE_FILE = "quarantine.log";
+
+    private final SockService sockService;
+    private final IncomeWalCheckpointRepository checkpointRepository;
+    private final IncomeWalKeyRepository keyRepository;
+    private final IncomeWalProperties properties;
+    private final IdempotencyProperties idempotencyProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService drainer;
+    private String walId;
+    private MappedAppendLog wal;
+    private volatile long appliedSequence;
+    private int failedDrains;
+
+    public IncomeWalService(SockService sockService,
+                            IncomeWalCheckpointRepository checkpointRepository,
+                            IncomeWalKeyRepository keyRepository,
+                            IncomeWalProperties properties,
+                            IdempotencyProperties idempotencyProperties,
+                            PlatformTransactionManager transactionManager) {
+        this.sockService = sockService;
+        this.checkpointRepository = checkpointRepository;
+        this.keyRepository = keyRepository;
+        this.properties = properties;
+        this.idempotencyProperties = idempotencyProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "income-wal-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Path directory = properties.getDirectory();
+        Files.createDirectories(directory);
+        walId = readOrCreateWalId(directory);
+        appliedSequence = checkpointRepository.findById(walId)
+                .map(IncomeWalCheckpoint::getAppliedSequence)
+                .orElse(0L);
+        wal = new MappedAppendLog(directory, (int) properties.getSegmentSize().toBytes(), appliedSequence);
+        wal.start("income-wal-flusher");
+        log.info("Журнал поступлений {} открыт, применено до {}, ожидает переноса {}",
+                walId, appliedSequence, wal.getLastSequence() - appliedSequence);
+
+        long interval = properties.getDrainInterval().toMillis();
+        drainer.scheduleWithFixedDelay(this::drainSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        drainer.shutdown();
+        drainer.awaitTermination(30, TimeUnit.SECONDS);
+        drainSafely();
+        wal.close();
+    }
+
+    /**
+     * Записывает поступление в журнал и ждёт сброса на диск не дольше {@code durable-timeout}.
+     *
+     * @param idempotencyKey ключ идемпотентности запроса или {@code null}
+     * @return номер записи в журнале
+     * @throws ServiceUnavailableException если запись не сброшена на диск; она может быть перенесена позже
+     */
+    public long append(String color, Integer cottonPercentage, Integer quantity, String idempotencyKey) {
+        long sequence = wal.append(encode(color, cottonPercentage, quantity, idempotencyKey));
+        try {
+            wal.awaitDurable(sequence, properties.getDurableTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Не удалось записать поступление в журнал.");
+        } catch (IOException e) {
+            log.warn("Поступление {} не подтверждено: {}", sequence, e.getMessage());
+            throw new ServiceUnavailableException("Журнал поступлений недоступен, повторите запрос позже.");
+        }
+        return sequence;
+    }
+
+    /**
+     * Переносит в БД все сброшенные на диск записи. Каждая пачка — одна транзакция вместе с новым номером.
+     */
+    public void drain() {
+        List<MappedAppendLog.Entry> entries;
+        do {
+            entries = wal.read(appliedSequence, properties.getDrainBatchSize());
+            if (!entries.isEmpty()) {
+                applyBatch(entries);
+            }
+        } while (entries.size() == properties.getDrainBatchSize());
+    }
+
+    /**
+     * Переносит следующую пачку по одной записи. Запись, которая не переносится, дописывается
+     * в карантинный файл в той же транзакции, что и сдвиг номера, поэтому при недоступной БД
+     * номер не сдвигается и запись остаётся в журнале.
+     */
+    private void drainOneByOne() {
+        for (MappedAppendLog.Entry entry : wal.read(appliedSequence, properties.getDrainBatchSize())) {
+            try {
+                applyBatch(List.of(entry));
+            } catch (RuntimeException e) {
+                quarantine(entry, e);
+            }
+        }
+    }
+
+    private void applyBatch(List<MappedAppendLog.Entry> entries) {
+        long lastSequence = entries.get(entries.size() - 1).sequence();
+        Long applied = transactionTemplate.execute(status -> {
+            IncomeWalCheckpoint checkpoint = lockCheckpoint();
+            long alreadyApplied = checkpoint.getAppliedSequence();
+            List<Income> incomes = entries.stream()
+                    .filter(entry -> entry.sequence() > alreadyApplied)
+                    .map(entry -> decode(entry.payload()))
+                    .toList();
+
+            Set<String> appliedKeys = findAppliedKeys(incomes);
+            List<IncomeWalKey> newKeys = new ArrayList<>();
+            Instant now = Instant.now();
+            Map<IncomeKey, Integer> quantities = new LinkedHashMap<>();
+            for (Income income : incomes) {
+                String idempotencyKey = income.idempotencyKey();
+                if (idempotencyKey != null) {
+                    if (!appliedKeys.add(idempotencyKey)) {
+                        log.info("Повтор поступления с ключом {} уже перенесён, запись пропущена", idempotencyKey);
+                        continue;
+                    }
+                    newKeys.add(IncomeWalKey.builder().key(idempotencyKey).appliedAt(now).build());
+                }
+                quantities.merge(new IncomeKey(income.color(), income.cottonPercentage()), income.quantity(),
+                        Integer::sum);
+            }
+            quantities.forEach((key, quantity) ->
+                    sockService.registerIncome(key.color(), key.cottonPercentage(), quantity));
+            // одновременный перенос того же ключа другим экземпляром упадёт на первичном ключе и повторится
+            keyRepository.saveAll(newKeys);
+
+            return saveCheckpoint(checkpoint, Math.max(alreadyApplied, lastSequence));
+        });
+        markApplied(applied);
+        log.debug("Из журнала перенесено записей: {}, применено до {}", entries.size(), applied);
+    }
+
+    private void quarantine(MappedAppendLog.Entry entry, RuntimeException cause) {
+        Path file = properties.getDirectory().resolve(QUARANTINE_FILE);
+        Long applied = transactionTemplate.execute(status -> {
+            IncomeWalCheckpoint checkpoint = lockCheckpoint();
+            if (checkpoint.getAppliedSequence() >= entry.sequence()) {
+                return checkpoint.getAppliedSequence();
+            }
+            appendQuarantine(file, entry, cause);
+            return saveCheckpoint(checkpoint, entry.sequence());
+        });
+        markApplied(applied);
+        log.error("Запись {} журнала не переносится в БД и перемещена в {}", entry.sequence(), file, cause);
+    }
+
+    @Scheduled(fixedDelayString = "${shop-socks.idempotency.cleanup-interval:PT10M}")
+    public void removeExpiredKeys() {
+        Instant before = Instant.now().minus(idempotencyProperties.getTtl());
+        Integer removed = transactionTemplate.execute(status -> keyRepository.deleteAppliedBefore(before));
+        log.debug("Удалено ключей перенесённых поступлений: {}", removed);
+    }
+
+    private Set<String> findAppliedKeys(List<Income> incomes) {
+        List<String> keys = incomes.stream()
+                .map(Income::idempotencyKey)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        Set<String> applied = new HashSet<>();
+        if (!keys.isEmpty()) {
+            keyRepository.findAllById(keys).forEach(key -> applied.add(key.getKey()));
+        }
+        return applied;
+    }
+
+    private IncomeWalCheckpoint lockCheckpoint() {
+        return checkpointRepository.findForUpdate(walId)
+                .orElseGet(() -> IncomeWalCheckpoint.builder().walId(walId).appliedSequence(0L).build());
+    }
+
+    private long saveCheckpoint(IncomeWalCheckpoint checkpoint, long sequence) {
+        checkpoint.setAppliedSequence(sequence);
+        checkpoint.setUpdatedAt(Instant.now());
+        checkpointRepository.save(checkpoint);
+        return sequence;
+    }
+
+    private void markApplied(long applied) {
+        appliedSequence = applied;
+        wal.deleteThrough(applied);
+    }
+
+    /**
+     * Вызывается только потоком переноса и при закрытии после его остановки.
+     */
+    private void drainSafely() {
+        try {
+            drain();
+            failedDrains = 0;
+            return;
+        } catch (RuntimeException e) {
+            failedDrains++;
+            if (failedDrains < properties.getMaxDrainAttempts()) {
+                log.warn("Не удалось перенести поступления из журнала (попытка {}), повтор через {}",
+                        failedDrains, properties.getDrainInterval(), e);
+                return;
+            }
+            log.error("Пачка из журнала не переносится {} раз подряд, записи переносятся по одной", failedDrains, e);
+        }
+        try {
+            drainOneByOne();
+            failedDrains = 0;
+        } catch (RuntimeException e) {
+            log.warn("Не удалось перенести поступления из журнала по одной, повтор через {}",
+                    properties.getDrainInterval(), e);
+        }
+    }
+
+    /**
+     * Строка карантина: номер записи, цвет, процент хлопка, количество и причина. Файл не очищается,
+     * записи из него вносятся вручную.
+     */
+    private static void appendQuarantine(Path file, MappedAppendLog.Entry entry, RuntimeException cause) {
+        String line = entry.sequence() + ";" + describe(entry.payload()) + ";" + cause + System.lineSeparator();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать карантинный файл " + file, e);
+        }
+    }
+
+    private static String describe(byte[] payload) {
+        Income income;
+        try {
+            income = decode(payload);
+        } catch (RuntimeException e) {
+            return "base64:" + Base64.getEncoder().encodeToString(payload);
+        }
+        return income.color() + ";" + income.cottonPercentage() + ";" + income.quantity();
+    }
+
+    /**
+     * Длина и байты цвета, процент хлопка, количество, затем длина и байты ключа идемпотентности,
+     * если он есть. Записи без ключа совпадают с прежним форматом.
+     */
+    private static byte[] encode(String color, Integer cottonPercentage, Integer quantity, String idempotencyKey) {
+        byte[] colorBytes = color.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = idempotencyKey != null ? idempotencyKey.getBytes(StandardCharsets.UTF_8) : null;
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 3 + colorBytes.length
+                        + (keyBytes != null ? Integer.BYTES + keyBytes.length : 0))
+                .putInt(colorBytes.length)
+                .put(colorBytes)
+                .putInt(cottonPercentage)
+                .putInt(quantity);
+        if (keyBytes != null) {
+            buffer.putInt(keyBytes.length).put(keyBytes);
+        }
+        return buffer.array();
+    }
+
+    private static Income decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String color = readString(buffer);
+        int cottonPercentage = buffer.getInt();
+        int quantity = buffer.getInt();
+        String idempotencyKey = buffer.hasRemaining() ? readString(buffer) : null;
+        return new Income(color, cottonPercentage, quantity, idempotencyKey);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Идентификатор связывает каталог журнала с номером в БД. Без него уже существующие сегменты
+     * применились бы повторно, поэтому в таком случае приложение не стартует.
+     */
+    private static String readOrCreateWalId(Path directory) {
+        Path file = directory.resolve(WAL_ID_FILE);
+        try {
+            if (Files.exists(file)) {
+                return Files.readString(file).trim();
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                if (files.findAny().isPresent()) {
+                    throw new IllegalStateException("В каталоге журнала " + directory + " нет файла " + WAL_ID_FILE
+                            + ", а сегменты есть: без него нельзя определить, что уже перенесено в БД.");
+                }
+            }
+            String id = UUID.randomUUID().toString();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(id.getBytes(StandardCharsets.UTF_8)));
+                channel.force(true);
+            }
+            return id;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать идентификатор журнала " + file, e);
+        }
+    }
+
+    private record IncomeKey(String color, Integer cottonPercentage) {
+    }
+
+    private record Income(String color, Integer cottonPercentage, Integer quantity, String idempotencyKey) {
+    }
+}
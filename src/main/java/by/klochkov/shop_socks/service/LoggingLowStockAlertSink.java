@@ -0,0 +1,24 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.dto.LowStockAlertDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "shop-socks.low-stock", name = "sink", havingValue = "log", matchIfMissing = true)
+public class LoggingLowStockAlertSink implements LowStockAlertSink {
+
+    @Override
+    public void raised(LowStockAlertDto alert) {
+        log.warn("Заканчиваются носки цвета {} с {}% хлопка (id {}): осталось {}, порог {}",
+                alert.color(), alert.cottonPercentage(), alert.sockId(), alert.quantity(), alert.threshold());
+    }
+
+    @Override
+    public void cleared(LowStockAlertDto alert) {
+        log.info("Остаток носков цвета {} с {}% хлопка (id {}) снова не ниже порога {}",
+                alert.color(), alert.cottonPercentage(), alert.sockId(), alert.threshold());
+    }
+}
@@ -0,0 +1,202 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.config.LowStockProperties;
+import by.klochkov.shop_socks.dto.LowStockAlertDto;
+import by.klochkov.shop_socks.event.InventoryChangeEvent;
+import by.klochkov.shop_socks.event.InventoryChangeType;
+import by.klochkov.shop_socks.model.LowStockAlert;
+import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.repository.LowStockAlertRepository;
+import by.klochkov.shop_socks.repository.SockRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Следит за порогами дозаказа по закоммиченным изменениям остатков. Большинство изменений отсекается
+ * сравнением прежнего и нового количества с порогом позиции, без обращения к БД. При переходе через порог
+ * обработчики разных запросов могут выполниться не в порядке коммитов, поэтому решение принимается
+ * по текущему остатку, прочитанному под блокировкой строки носков: уведомление открывается, если остаток
+ * ниже порога, и закрывается, если нет. Состояние хранится только в БД: незакрытое уведомление у носков
+ * одно, это держит частичный уникальный индекс. Сверка выполняется в отдельном потоке, чтобы поток
+ * запроса не держал второе соединение из пула после коммита.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "shop-socks.low-stock", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LowStockAlertService {
+
+    private final LowStockAlertRepository alertRepository;
+    private final SockRepository sockRepository;
+    private final LowStockAlertSink sink;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final int defaultThreshold;
+    private final Map<String, Integer> colorThresholds;
+    private final Map<SkuKey, Integer> skuThresholds = new HashMap<>();
+
+    public LowStockAlertService(LowStockAlertRepository alertRepository,
+                                SockRepository sockRepository,
+                                LowStockAlertSink sink,
+                                LowStockProperties properties,
+                                PlatformTransactionManager transactionManager) {
+        this.alertRepository = alertRepository;
+        this.sockRepository = sockRepository;
+        this.sink = sink;
+        // обработчик работает после коммита: запись уведомления идёт в своей транзакции
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // один поток: сверки одного экземпляра не ждут друг друга на блокировке строки носков;
+        // при переполнении очереди сверка выполняется в потоке запроса, а не теряется
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(properties.getQueueCapacity()), runnable -> {
+                    Thread thread = new Thread(runnable, "low-stock-alerts");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.defaultThreshold = properties.getDefaultThreshold();
+        this.colorThresholds = Map.copyOf(properties.getColors());
+        for (LowStockProperties.Sku sku : properties.getSkus()) {
+            skuThresholds.put(new SkuKey(sku.getColor(), sku.getCottonPercentage()), sku.getThreshold());
+        }
+    }
+
+    /**
+     * Прежнее количество 0 бывает и у только что созданных носков, поэтому оно считается переходом,
+     * если остаток ниже порога. Обновление сверяется всегда, даже если за новой позицией не следят:
+     * могло остаться уведомление прежней.
+     */
+    @TransactionalEventListener
+    public void onInventoryChange(InventoryChangeEvent event) {
+        int threshold = getThreshold(event.color(), event.cottonPercentage());
+        boolean low = event.quantity() < threshold;
+        boolean crossed = low != (event.previousQuantity() < threshold) || (low && event.previousQuantity() == 0);
+        if (event.type() != InventoryChangeType.UPDATE && (threshold <= 0 || !crossed)) {
+            return;
+        }
+        executor.execute(() -> reconcileSafely(event, threshold));
+    }
+
+    /**
+     * Дожидается сверок, уже поставленных в очередь.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private void reconcileSafely(InventoryChangeEvent event, int threshold) {
+        List<Runnable> notifications;
+        try {
+            notifications = transactionTemplate.execute(status -> reconcile(event, threshold));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось обновить уведомление о пороге для носков id {}", event.sockId(), e);
+            return;
+        }
+        notifications.forEach(this::notifySafely);
+    }
+
+    public List<LowStockAlertDto> getActiveAlerts() {
+        return alertRepository.findByClearedAtIsNullOrderByRaisedAt().stream()
+                .map(LowStockAlertService::toDto)
+                .toList();
+    }
+
+    /**
+     * Порог позиции, если он задан, иначе порог цвета, иначе общий.
+     */
+    public int getThreshold(String color, Integer cottonPercentage) {
+        Integer threshold = skuThresholds.get(new SkuKey(color, cottonPercentage));
+        if (threshold == null) {
+            threshold = colorThresholds.get(color);
+        }
+        return threshold != null ? threshold : defaultThreshold;
+    }
+
+    /**
+     * Блокировка строки носков упорядочивает сверку с записью остатка: изменение, закоммиченное позже,
+     * сверится уже после этой транзакции и увидит её уведомление. После updateSock открытое уведомление
+     * другой позиции закрывается.
+     */
+    private List<Runnable> reconcile(InventoryChangeEvent event, int threshold) {
+        Integer quantity = threshold > 0 ? currentQuantity(event) : null;
+        boolean low = quantity != null && quantity < threshold;
+        List<Runnable> notifications = new ArrayList<>(2);
+        boolean open = false;
+        for (LowStockAlert alert : alertRepository.findBySockIdAndClearedAtIsNull(event.sockId())) {
+            if (low && isSameSku(alert, event)) {
+                open = true;
+            } else {
+                close(alert, notifications);
+            }
+        }
+        if (low && !open) {
+            notifications.addAll(raise(event, threshold, quantity));
+        }
+        return notifications;
+    }
+
+    /**
+     * @return остаток носков из события или {@code null}, если позиция с тех пор удалена или сменила ключ
+     */
+    private Integer currentQuantity(InventoryChangeEvent event) {
+        return sockRepository.findForUpdate(event.color(), event.cottonPercentage())
+                .filter(sock -> sock.getId().equals(event.sockId()))
+                .map(Sock::getQuantity)
+                .orElse(null);
+    }
+
+    private List<Runnable> raise(InventoryChangeEvent event, int threshold, int quantity) {
+        Instant now = Instant.now();
+        int inserted = alertRepository.insertIfAbsent(event.sockId(), event.color(), event.cottonPercentage(),
+                threshold, quantity, now);
+        if (inserted == 0) {
+            return List.of();
+        }
+        LowStockAlertDto raised = new LowStockAlertDto(event.sockId(), event.color(), event.cottonPercentage(),
+                threshold, quantity, now, null);
+        return List.of(() -> sink.raised(raised));
+    }
+
+    private void close(LowStockAlert alert, List<Runnable> notifications) {
+        alert.setClearedAt(Instant.now());
+        LowStockAlertDto cleared = toDto(alertRepository.save(alert));
+        notifications.add(() -> sink.cleared(cleared));
+    }
+
+    private void notifySafely(Runnable notification) {
+        try {
+            notification.run();
+        } catch (RuntimeException e) {
+            log.warn("Получатель уведомлений о пороге дозаказа завершился с ошибкой", e);
+        }
+    }
+
+    private static boolean isSameSku(LowStockAlert alert, InventoryChangeEvent event) {
+        return alert.getColor().equals(event.color()) && alert.getCottonPercentage().equals(event.cottonPercentage());
+    }
+
+    private static LowStockAlertDto toDto(LowStockAlert alert) {
+        return new LowStockAlertDto(alert.getSockId(), alert.getColor(), alert.getCottonPercentage(),
+                alert.getThreshold(), alert.getQuantity(), alert.getRaisedAt(), alert.getClearedAt());
+    }
+
+    private record SkuKey(String color, Integer cottonPercentage) {
+    }
+}
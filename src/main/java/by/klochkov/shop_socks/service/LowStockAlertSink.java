@@ -0,0 +1,14 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.dto.LowStockAlertDto;
+
+/**
+ * Получатель уведомлений о пересечении порога дозаказа. Вызывается после коммита в потоке,
+ * закоммитившем изменение, поэтому не должен надолго его задерживать.
+ */
+public interface LowStockAlertSink {
+
+    void raised(LowStockAlertDto alert);
+
+    void cleared(LowStockAlertDto alert);
+}
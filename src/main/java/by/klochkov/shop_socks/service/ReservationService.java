@@ -0,0 +1,205 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.config.ReservationProperties;
+import by.klochkov.shop_socks.event.InventoryChangeEvent;
+import by.klochkov.shop_socks.event.InventoryChangeType;
+import by.klochkov.shop_socks.exception.NotEnoughQuantityException;
+import by.klochkov.shop_socks.exception.ResourceNotFoundException;
+import by.klochkov.shop_socks.model.Reservation;
+import by.klochkov.shop_socks.model.ReservationStatus;
+import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.repository.ReservationExpiryView;
+import by.klochkov.shop_socks.repository.ReservationRepository;
+import by.klochkov.shop_socks.repository.SockRepository;
+import by.klochkov.shop_socks.util.HierarchicalTimingWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Резервы удерживают носки до подтверждения. Просроченные резервы снимаются колесом таймеров
+ * в памяти, которое при старте заполняется активными резервами из БД. Пока колесо не успело
+ * снять резерв, он уже не учитывается в доступном количестве, так как запросы проверяют срок.
+ */
+@Service
+@Slf4j
+public class ReservationService {
+
+    private static final int EXPIRE_BATCH_SIZE = 1000;
+    private static final Duration EXPIRE_RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final ReservationRepository reservationRepository;
+    private final SockRepository sockRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ReservationProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final HierarchicalTimingWheel<Long> timingWheel;
+    private final Map<Long, HierarchicalTimingWheel.Timeout<Long>> timeouts = new ConcurrentHashMap<>();
+
+    public ReservationService(ReservationRepository reservationRepository,
+                              SockRepository sockRepository,
+                              ApplicationEventPublisher eventPublisher,
+                              ReservationProperties properties,
+                              PlatformTransactionManager transactionManager) {
+        this.reservationRepository = reservationRepository;
+        this.sockRepository = sockRepository;
+        this.eventPublisher = eventPublisher;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.timingWheel = new HierarchicalTimingWheel<>(properties.getTick().toMillis(), properties.getWheelSize(),
+                this::expire);
+    }
+
+    @PostConstruct
+    public void startTimingWheel() {
+        timingWheel.start("reservation-expiry");
+    }
+
+    @PreDestroy
+    public void stopTimingWheel() {
+        timingWheel.stop();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void scheduleActiveReservations() {
+        AtomicInteger count = new AtomicInteger();
+        try (Stream<ReservationExpiryView> active = reservationRepository.findByStatus(ReservationStatus.ACTIVE)) {
+            active.forEach(reservation -> {
+                schedule(reservation.getId(), reservation.getExpiresAt());
+                count.incrementAndGet();
+            });
+        }
+        log.info("Восстановлено активных резервов: {}", count.get());
+    }
+
+    @Transactional
+    public Reservation reserve(String color, Integer cottonPercentage, Integer quantity, Long ttlSeconds) {
+        Duration ttl = ttlSeconds == null ? properties.getDefaultTtl() : Duration.ofSeconds(ttlSeconds);
+        if (ttl.compareTo(properties.getMaxTtl()) > 0) {
+            throw new IllegalArgumentException("Время удержания резерва не может быть больше "
+                    + properties.getMaxTtl().toSeconds() + " секунд.");
+        }
+
+        Sock sock = sockRepository.findForUpdate(color, cottonPercentage)
+                .orElseThrow(() -> new ResourceNotFoundException("Socks not found"));
+        Instant now = Instant.now();
+        int held = reservationRepository.getActiveQuantity(color, cottonPercentage, ReservationStatus.ACTIVE, now);
+        if (sock.getQuantity() - held < quantity) {
+            throw new NotEnoughQuantityException("Not enough socks in stock");
+        }
+
+        Reservation reservation = reservationRepository.save(Reservation.builder()
+                .color(color)
+                .cottonPercentage(cottonPercentage)
+                .quantity(quantity)
+                .status(ReservationStatus.ACTIVE)
+                .createdAt(now)
+                .expiresAt(now.plus(ttl))
+                .build());
+        afterCommit(() -> schedule(reservation.getId(), reservation.getExpiresAt()));
+        log.info("Reserved {} socks of color {} with {}% cotton until {}",
+                quantity, color, cottonPercentage, reservation.getExpiresAt());
+        return reservation;
+    }
+
+    @Transactional
+    public Reservation confirm(Long id) {
+        Reservation reservation = getActiveReservation(id);
+        Sock sock = sockRepository.findForUpdate(reservation.getColor(), reservation.getCottonPercentage())
+                .orElseThrow(() -> new ResourceNotFoundException("Socks not found"));
+        if (sock.getQuantity() < reservation.getQuantity()) {
+            throw new NotEnoughQuantityException("Not enough socks in stock");
+        }
+
+        int previousQuantity = sock.getQuantity();
+        sock.setQuantity(previousQuantity - reservation.getQuantity());
+        Sock updatedSock = sockRepository.save(sock);
+        reservation.setStatus(ReservationStatus.CONFIRMED);
+        Reservation confirmed = reservationRepository.save(reservation);
+
+        eventPublisher.publishEvent(new InventoryChangeEvent(updatedSock.getId(), updatedSock.getColor(),
+                updatedSock.getCottonPercentage(), previousQuantity, updatedSock.getQuantity(),
+                InventoryChangeType.OUTCOME));
+        afterCommit(() -> cancelTimeout(id));
+        log.info("Confirmed reservation {}: {} socks of color {} with {}% cotton",
+                id, reservation.getQuantity(), reservation.getColor(), reservation.getCottonPercentage());
+        return confirmed;
+    }
+
+    @Transactional
+    public Reservation cancel(Long id) {
+        Reservation reservation = getActiveReservation(id);
+        reservation.setStatus(ReservationStatus.CANCELLED);
+        Reservation cancelled = reservationRepository.save(reservation);
+        afterCommit(() -> cancelTimeout(id));
+        log.info("Cancelled reservation {}", id);
+        return cancelled;
+    }
+
+    public int getPendingExpiryCount() {
+        return timingWheel.size();
+    }
+
+    private Reservation getActiveReservation(Long id) {
+        Reservation reservation = reservationRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Reservation not found with id: " + id));
+        if (reservation.getStatus() != ReservationStatus.ACTIVE || !reservation.getExpiresAt().isAfter(Instant.now())) {
+            throw new IllegalArgumentException("Резерв " + id + " уже не активен.");
+        }
+        return reservation;
+    }
+
+    private void schedule(Long id, Instant expiresAt) {
+        timeouts.put(id, timingWheel.schedule(id, expiresAt.toEpochMilli()));
+    }
+
+    private void cancelTimeout(Long id) {
+        HierarchicalTimingWheel.Timeout<Long> timeout = timeouts.remove(id);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void expire(List<Long> ids) {
+        for (int from = 0; from < ids.size(); from += EXPIRE_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(ids.size(), from + EXPIRE_BATCH_SIZE));
+            try {
+                Integer expired = transactionTemplate.execute(status -> reservationRepository
+                        .updateStatus(batch, ReservationStatus.ACTIVE, ReservationStatus.EXPIRED));
+                batch.forEach(timeouts::remove);
+                log.debug("Снято просроченных резервов: {}", expired);
+            } catch (RuntimeException e) {
+                log.warn("Не удалось снять {} просроченных резервов, повтор через {}", batch.size(), EXPIRE_RETRY_DELAY, e);
+                Instant retryAt = Instant.now().plus(EXPIRE_RETRY_DELAY);
+                batch.forEach(id -> schedule(id, retryAt));
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.dto.SockCsvDto;
+import by.klochkov.shop_socks.exception.DataProcessingException;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Построчное чтение CSV {@code color;cottonPercentage;quantity}. Первая строка — заголовок.
+ * Каждая строка проверяется по ограничениям {@link SockCsvDto} и передаётся обработчику как корректная
+ * или как отклонённая с номером строки и причиной; исключения для ошибок в данных не используются.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SockCsvReader {
+
+    private static final int FIELD_COUNT = 3;
+    private static final int MAX_CONTENT_LENGTH = 200;
+
+    private final Validator validator;
+
+    public interface RowHandler {
+
+        void accept(long line, SockCsvDto row);
+
+        void reject(long line, String content, String reason);
+    }
+
+    public void read(MultipartFile file, RowHandler handler) {
+        long line = 0;
+        try (Reader reader = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8);
+             CSVReader csvReader = new CSVReaderBuilder(reader)
+                     .withCSVParser(new CSVParserBuilder().withSeparator(';').build())
+                     .withSkipLines(1)
+                     .build()) {
+            String[] fields;
+            while ((fields = csvReader.readNext()) != null) {
+                line = csvReader.getLinesRead();
+                if (fields.length == 1 && fields[0].isBlank()) {
+                    continue;
+                }
+                handle(line, fields, handler);
+            }
+            log.debug("Прочитано строк CSV: {}", line);
+        } catch (IOException | CsvValidationException e) {
+            throw new DataProcessingException("Ошибка чтения файла после строки " + line + ".");
+        }
+    }
+
+    private void handle(long line, String[] fields, RowHandler handler) {
+        if (fields.length != FIELD_COUNT) {
+            handler.reject(line, content(fields), "Ожидается " + FIELD_COUNT + " поля через ';', получено " + fields.length + ".");
+            return;
+        }
+        Integer cottonPercentage = parseInteger(fields[1]);
+        if (cottonPercentage == null && !fields[1].isBlank()) {
+            handler.reject(line, content(fields), "Процент хлопка не является целым числом.");
+            return;
+        }
+        Integer quantity = parseInteger(fields[2]);
+        if (quantity == null && !fields[2].isBlank()) {
+            handler.reject(line, content(fields), "Количество не является целым числом.");
+            return;
+        }
+
+        SockCsvDto row = SockCsvDto.builder()
+                .color(fields[0])
+                .cottonPercentage(cottonPercentage)
+                .quantity(quantity)
+                .build();
+        Set<ConstraintViolation<SockCsvDto>> violations = validator.validate(row);
+        if (violations.isEmpty()) {
+            handler.accept(line, row);
+        } else {
+            handler.reject(line, content(fields), violations.stream()
+                    .sorted(Comparator.comparing(violation -> violation.getPropertyPath().toString()))
+                    .map(ConstraintViolation::getMessage)
+                    .collect(Collectors.joining(" ")));
+        }
+    }
+
+    /**
+     * @return число или {@code null}, если строка не является целым числом типа int
+     */
+    private static Integer parseInteger(String value) {
+        String trimmed = value.trim();
+        int start = trimmed.startsWith("-") || trimmed.startsWith("+") ? 1 : 0;
+        if (trimmed.length() == start || trimmed.length() - start > 10) {
+            return null;
+        }
+        for (int i = start; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        long parsed = Long.parseLong(trimmed);
+        return parsed < Integer.MIN_VALUE || parsed > Integer.MAX_VALUE ? null : (int) parsed;
+    }
+
+    private static String content(String[] fields) {
+        String content = String.join(";", fields);
+        return content.length() > MAX_CONTENT_LENGTH ? content.substring(0, MAX_CONTENT_LENGTH) : content;
+    }
+}
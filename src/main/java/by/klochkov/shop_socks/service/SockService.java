@@ -1,31 +1,38 @@
 package by.klochkov.shop_socks.service;
 
+import by.klochkov.shop_socks.config.CsvImportProperties;
+import by.klochkov.shop_socks.dto.CsvImportReportDto;
+import by.klochkov.shop_socks.dto.CsvRejectedRowDto;
 import by.klochkov.shop_socks.dto.SockCsvDto;
 import by.klochkov.shop_socks.dto.UpdateSockDto;
+import by.klochkov.shop_socks.event.InventoryChangeEvent;
+import by.klochkov.shop_socks.event.InventoryChangeType;
 import by.klochkov.shop_socks.exception.DataProcessingException;
 import by.klochkov.shop_socks.exception.NotEnoughQuantityException;
 import by.klochkov.shop_socks.exception.ResourceNotFoundException;
 import by.klochkov.shop_socks.mapper.SockMapper;
+import by.klochkov.shop_socks.model.ReservationStatus;
 import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.repository.ReservationRepository;
 import by.klochkov.shop_socks.repository.SockRepository;
-import com.opencsv.CSVParser;
-import com.opencsv.CSVParserBuilder;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 @Service
 @Slf4j
@@ -33,133 +40,287 @@ import java.util.stream.Collectors;
 public class SockService {
 
     private final SockRepository sockRepository;
+    private final ReservationRepository reservationRepository;
     private final SockMapper sockMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SockCsvReader sockCsvReader;
+    private final CsvImportProperties csvImportProperties;
 
+    /**
+     * Остаток читается из БД под блокировкой, а не из кеша второго уровня: кеш локален для экземпляра
+     * и может хранить устаревшее количество. Новые носки вставляются с INSERT ... ON CONFLICT DO NOTHING:
+     * если тот же ключ одновременно вставил другой запрос, поступление прибавляется к его строке.
+     */
     @Transactional
     public Sock registerIncome(String color, Integer cottonPercentage, Integer quantity) {
-        Sock sock = sockRepository.findByColorAndCottonPercentage(color, cottonPercentage)
-                .orElse(Sock.builder()
-                        .color(color)
-                        .cottonPercentage(cottonPercentage)
-                        .quantity(0)
-                        .build());
-        sock.setQuantity(sock.getQuantity() + quantity);
+        Optional<Sock> existing = sockRepository.findForUpdate(color, cottonPercentage);
+        if (existing.isEmpty() && sockRepository.insertIfAbsent(color, cottonPercentage, quantity) == 1) {
+            Sock createdSock = lockExisting(color, cottonPercentage);
+            publishChange(InventoryChangeType.INCOME, createdSock, 0);
+            log.info("Registered income: {} socks of color {} with {}% cotton", quantity, color, cottonPercentage);
+            return createdSock;
+        }
+        Sock sock = existing.orElseGet(() -> lockExisting(color, cottonPercentage));
+        int previousQuantity = sock.getQuantity();
+        sock.setQuantity(previousQuantity + quantity);
 
         Sock savedSock = sockRepository.save(sock);
+        publishChange(InventoryChangeType.INCOME, savedSock, previousQuantity);
         log.info("Registered income: {} socks of color {} with {}% cotton", quantity, color, cottonPercentage);
         return savedSock;
     }
 
+    /**
+     * Строка носков блокируется, как и при резервировании, поэтому отпуск и резерв не могут
+     * одновременно пройти проверку доступного количества.
+     */
     @Transactional
     public Sock registerOutcome(String color, Integer cottonPercentage, Integer quantity) {
-        Sock sock = sockRepository.findByColorAndCottonPercentage(color, cottonPercentage)
+        Sock sock = sockRepository.findForUpdate(color, cottonPercentage)
                 .orElseThrow(() -> new ResourceNotFoundException("Socks not found"));
 
-        if (sock.getQuantity() < quantity) {
+        int held = reservationRepository.getActiveQuantity(color, cottonPercentage,
+                ReservationStatus.ACTIVE, Instant.now());
+        if (sock.getQuantity() - held < quantity) {
             throw new NotEnoughQuantityException("Not enough socks in stock");
         }
 
-        sock.setQuantity(sock.getQuantity() - quantity);
+        int previousQuantity = sock.getQuantity();
+        sock.setQuantity(previousQuantity - quantity);
 
         Sock updatedSock = sockRepository.save(sock);
+        publishChange(InventoryChangeType.OUTCOME, updatedSock, previousQuantity);
         log.info("Registered outcome: {} socks of color {} with {}% cotton", quantity, color, cottonPercentage);
         return updatedSock;
     }
 
+    /**
+     * Позиция по естественному ключу из кеша второго уровня, при попадании без обращения к БД. Кеш локален
+     * для экземпляра: изменения с других экземпляров видны не позже, чем истечёт срок жизни записи кеша.
+     */
+    @Transactional(readOnly = true)
+    public Sock getSock(String color, Integer cottonPercentage) {
+        return sockRepository.findByColorAndCottonPercentage(color, cottonPercentage)
+                .orElseThrow(() -> new ResourceNotFoundException("Socks not found"));
+    }
+
+    @Transactional(readOnly = true)
     public Integer getQuantityWithFilter(String color, Integer minCottonPercentage, Integer maxCottonPercentage) {
         int totalQuantity = sockRepository
-                .getTotalQuantityByColorAndCottonPercentageRange(color, minCottonPercentage, maxCottonPercentage);
+                .getTotalQuantityByColorAndCottonPercentageRange(color, minCottonPercentage, maxCottonPercentage)
+                - reservationRepository.getActiveQuantityByColorAndCottonPercentageRange(
+                        color, minCottonPercentage, maxCottonPercentage, ReservationStatus.ACTIVE, Instant.now());
         log.info("Quantity of socks color {} minCottonPercentage {} maxCottonPercentage {} equal: {}",
                 color, minCottonPercentage, maxCottonPercentage, totalQuantity);
         return totalQuantity;
     }
 
+    /**
+     * Загрузка «всё или ничего»: первая же ошибочная строка откатывает всю загрузку.
+     */
     @Transactional
     public void processCsvFile(MultipartFile file) {
-        if (file.isEmpty()) {
-            throw new IllegalArgumentException("Файл пустой.");
-        }
-
-        List<SockCsvDto> sockDtos = parseCsvFile(file);
-        if (sockDtos.isEmpty()) {
-            throw new DataProcessingException("Файл пуст или содержит некорректные данные.");
-        }
-
-        List<Sock> socks = sockMapper.toListSocks(sockDtos);
-
-        saveOrUpdateSocks(socks);
-
+        importCsvFile(file, false);
         log.info("Данные из CSV-файла успешно обработаны и загружены в {}", LocalDateTime.now());
     }
 
-    private List<SockCsvDto> parseCsvFile(MultipartFile file) {
-        try (Reader reader = new InputStreamReader(file.getInputStream())) {
-            CSVParser parser = new CSVParserBuilder()
-                    .withSeparator(';')
-                    .build();
-
-            try (CSVReader csvReader = new CSVReaderBuilder(reader)
-                    .withCSVParser(parser)
-                    .build()) {
-
-                List<String[]> lines = csvReader.readAll();
-                log.debug("метод parseCsvFile. прочитано lines.size = {}", lines.size());
-
-                return lines.stream()
-                        .skip(1)
-                        .map(this::mapToDto)
-                        .collect(Collectors.toList());
-            }
-        } catch (IOException e) {
-            throw new DataProcessingException("Ошибка чтения файла.");
-        } catch (Exception e) {
-            throw new DataProcessingException("Ошибка обработки данных из файла.");
-        }
+    /**
+     * Загрузка с пропуском ошибочных строк: корректные строки применяются, отклонённые возвращаются
+     * в отчёте. Если доля ошибок превышает {@code shop-socks.csv-import.max-error-rate}, загрузка
+     * прерывается, не дочитывая файл.
+     * <p>
+     * Загрузка, как и обычная, идёт в одной транзакции: пачки ограничивают память, но не транзакцию.
+     * При прерывании откатываются и уже применённые пачки, в БД не попадает ничего, поэтому файл
+     * после исправления можно загрузить заново целиком.
+     */
+    @Transactional
+    public CsvImportReportDto processCsvFileTolerant(MultipartFile file) {
+        CsvImportReportDto report = importCsvFile(file, true);
+        log.info("Данные из CSV-файла загружены в {}: принято {}, отклонено {}",
+                LocalDateTime.now(), report.importedRows(), report.rejectedRows());
+        return report;
     }
 
-    private SockCsvDto mapToDto(String[] fields) {
-        if (fields.length != 3) {
-            throw new DataProcessingException("Некорректный формат строки: " + Arrays.toString(fields));
+    private CsvImportReportDto importCsvFile(MultipartFile file, boolean tolerant) {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("Файл пустой.");
         }
-        return SockCsvDto.builder()
-                .color(fields[0])
-                .cottonPercentage(Integer.parseInt(fields[1]))
-                .quantity(Integer.parseInt(fields[2]))
-                .build();
-    }
 
+        CsvImport csvImport = new CsvImport(tolerant);
+        sockCsvReader.read(file, csvImport);
+        return csvImport.finish();
+    }
 
-    private void saveOrUpdateSocks(List<Sock> socks) {
+    /**
+     * Позиции пачки читаются одним запросом под блокировкой, повторы ключа в пачке складываются,
+     * так что на каждую позицию приходится одна вставка или одно обновление. Изменения не публикуются
+     * сразу, а собираются в {@code changes}: одно событие на позицию за всю загрузку.
+     */
+    private void saveOrUpdateSocks(List<Sock> socks, Map<SkuKey, InventoryChangeEvent> changes) {
+        Map<SkuKey, Integer> quantities = new LinkedHashMap<>();
         for (Sock sock : socks) {
-            sockRepository.findByColorAndCottonPercentage(sock.getColor(), sock.getCottonPercentage())
-                    .ifPresentOrElse(
-                            existingSock -> updateSockQuantity(existingSock, sock.getQuantity()),
-                            () -> sockRepository.save(sock)
-                    );
+            quantities.merge(new SkuKey(sock.getColor(), sock.getCottonPercentage()), sock.getQuantity(), Integer::sum);
+        }
+
+        Set<String> colors = new HashSet<>();
+        Set<Integer> cottonPercentages = new HashSet<>();
+        quantities.keySet().forEach(key -> {
+            colors.add(key.color());
+            cottonPercentages.add(key.cottonPercentage());
+        });
+        Map<SkuKey, Sock> existingSocks = new HashMap<>();
+        for (Sock sock : sockRepository.findAllForUpdate(colors, cottonPercentages)) {
+            existingSocks.put(new SkuKey(sock.getColor(), sock.getCottonPercentage()), sock);
         }
-    }
 
-    private void updateSockQuantity(Sock existingSock, Integer additionalQuantity) {
-        existingSock.setQuantity(existingSock.getQuantity() + additionalQuantity);
-        sockRepository.save(existingSock);
+        quantities.forEach((key, quantity) -> {
+            Sock existingSock = existingSocks.get(key);
+            Sock sock;
+            int previousQuantity;
+            if (existingSock != null) {
+                previousQuantity = existingSock.getQuantity();
+                existingSock.setQuantity(previousQuantity + quantity);
+                sock = sockRepository.save(existingSock);
+            } else {
+                previousQuantity = 0;
+                sock = sockRepository.save(Sock.builder()
+                        .color(key.color())
+                        .cottonPercentage(key.cottonPercentage())
+                        .quantity(quantity)
+                        .build());
+            }
+            // от первой пачки остаётся прежнее количество, от последней — итоговое
+            changes.merge(key, changeEvent(InventoryChangeType.IMPORT, sock, previousQuantity),
+                    (first, last) -> new InventoryChangeEvent(last.sockId(), last.color(), last.cottonPercentage(),
+                            first.previousQuantity(), last.quantity(), last.type()));
+        });
     }
 
+    /**
+     * Количество нельзя сделать меньше зарезервированного, а цвет и процент хлопка нельзя менять,
+     * пока на носки есть активные резервы: резервы привязаны к цвету и проценту хлопка.
+     */
     @Transactional
     public Sock updateSock(Long id, UpdateSockDto updateSockDto) {
+        Sock sock = sockRepository.findByIdForUpdate(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Sock not found with id: " + id));
+        int held = reservationRepository.getActiveQuantity(sock.getColor(), sock.getCottonPercentage(),
+                ReservationStatus.ACTIVE, Instant.now());
+        boolean keyChanged = !sock.getColor().equals(updateSockDto.color())
+                || !sock.getCottonPercentage().equals(updateSockDto.cottonPercentage());
+        if (held > 0 && keyChanged) {
+            throw new IllegalArgumentException(String.format("На носки под id %s есть активные резервы, " +
+                    "цвет и процент хлопка у них изменить нельзя", id));
+        }
+        if (updateSockDto.quantity() < held) {
+            throw new NotEnoughQuantityException(String.format("Количество не может быть меньше " +
+                    "зарезервированного: %d", held));
+        }
+
         Optional<Sock> byColorAndCottonPercentage = sockRepository
                 .findByColorAndCottonPercentage(updateSockDto.color(), updateSockDto.cottonPercentage());
-        if (byColorAndCottonPercentage.isPresent() && byColorAndCottonPercentage.get().getId() != id) {
+        if (byColorAndCottonPercentage.isPresent() && !byColorAndCottonPercentage.get().getId().equals(id)) {
             throw new IllegalArgumentException(String.format("Уже есть носки с данным цветом и содержанием " +
                     "хлопка под id %s, изменрите количество у них", byColorAndCottonPercentage.get().getId()));
         }
-        Sock sock = sockRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Sock not found with id: " + id));
+        int previousQuantity = sock.getQuantity();
         sockMapper.updateSockFromDto(updateSockDto, sock);
 
 
         Sock updatedSock = sockRepository.save(sock);
+        publishChange(InventoryChangeType.UPDATE, updatedSock, previousQuantity);
         log.info("Updated sock with id {}: color={}, cottonPercentage={}, quantity={}",
                 id, updateSockDto.color(), updateSockDto.cottonPercentage(), updateSockDto.quantity());
         return updatedSock;
     }
+
+    private Sock lockExisting(String color, Integer cottonPercentage) {
+        return sockRepository.findForUpdate(color, cottonPercentage)
+                .orElseThrow(() -> new IllegalStateException(String.format(
+                        "Носки цвета %s с %d%% хлопка не найдены после вставки", color, cottonPercentage)));
+    }
+
+    private void publishChange(InventoryChangeType type, Sock sock, int previousQuantity) {
+        eventPublisher.publishEvent(changeEvent(type, sock, previousQuantity));
+    }
+
+    private static InventoryChangeEvent changeEvent(InventoryChangeType type, Sock sock, int previousQuantity) {
+        return new InventoryChangeEvent(sock.getId(), sock.getColor(), sock.getCottonPercentage(),
+                previousQuantity, sock.getQuantity(), type);
+    }
+
+    private record SkuKey(String color, Integer cottonPercentage) {
+    }
+
+    private final class CsvImport implements SockCsvReader.RowHandler {
+        private final boolean tolerant;
+        private final List<SockCsvDto> batch = new ArrayList<>();
+        private final List<CsvRejectedRowDto> rejects = new ArrayList<>();
+        private final Map<SkuKey, InventoryChangeEvent> changes = new LinkedHashMap<>();
+        private long imported;
+        private long rejected;
+        private long lastLine;
+
+        private CsvImport(boolean tolerant) {
+            this.tolerant = tolerant;
+        }
+
+        @Override
+        public void accept(long line, SockCsvDto row) {
+            lastLine = line;
+            batch.add(row);
+            if (batch.size() >= csvImportProperties.getBatchSize()) {
+                flushBatch();
+            }
+        }
+
+        @Override
+        public void reject(long line, String content, String reason) {
+            lastLine = line;
+            if (!tolerant) {
+                throw new DataProcessingException("Строка " + line + ": " + reason);
+            }
+            rejected++;
+            if (rejects.size() < csvImportProperties.getMaxReportedRejects()) {
+                rejects.add(new CsvRejectedRowDto(line, content, reason));
+            }
+            if (total() >= csvImportProperties.getMinRowsForErrorRate()) {
+                checkErrorRate();
+            }
+        }
+
+        private CsvImportReportDto finish() {
+            flushBatch();
+            if (total() == 0) {
+                throw new DataProcessingException("Файл пуст или содержит некорректные данные.");
+            }
+            if (total() >= csvImportProperties.getMinRowsForErrorRate()) {
+                checkErrorRate();
+            }
+            changes.values().forEach(eventPublisher::publishEvent);
+            return new CsvImportReportDto(total(), imported, rejected, rejected > rejects.size(), List.copyOf(rejects));
+        }
+
+        private void flushBatch() {
+            if (!batch.isEmpty()) {
+                saveOrUpdateSocks(sockMapper.toListSocks(batch), changes);
+                imported += batch.size();
+                batch.clear();
+            }
+        }
+
+        private void checkErrorRate() {
+            double errorRate = (double) rejected / total();
+            if (errorRate > csvImportProperties.getMaxErrorRate()) {
+                throw new DataProcessingException(String.format(Locale.ROOT,
+                        "Загрузка прервана на строке %d: ошибочных строк %.2f%%, допустимо не больше %.2f%%. " +
+                                "Данные из файла не загружены.",
+                        lastLine, errorRate * 100, csvImportProperties.getMaxErrorRate() * 100));
+            }
+        }
+
+        private long total() {
+            return imported + batch.size() + rejected;
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package by.klochkov.shop_socks.service;
+
+import by.klochkov.shop_socks.config.LowStockProperties;
+import by.klochkov.shop_socks.dto.LowStockAlertDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Отправляет уведомления POST-запросом с JSON {@code {"event": "raised|cleared", "alert": {...}}}.
+ * Запрос асинхронный и без повторов: неудачная отправка только пишется в лог, уведомление при этом
+ * остаётся в {@code GET /api/socks/alerts}.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "shop-socks.low-stock", name = "sink", havingValue = "webhook")
+public class WebhookLowStockAlertSink implements LowStockAlertSink {
+
+    private final ObjectMapper objectMapper;
+    private final URI url;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+
+    public WebhookLowStockAlertSink(ObjectMapper objectMapper, LowStockProperties properties) {
+        URI url = properties.getWebhook().getUrl();
+        if (url == null || url.toString().isBlank()) {
+            throw new IllegalStateException("Для shop-socks.low-stock.sink=webhook нужен shop-socks.low-stock.webhook.url");
+        }
+        this.objectMapper = objectMapper;
+        this.url = url;
+        this.timeout = properties.getWebhook().getTimeout();
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public void raised(LowStockAlertDto alert) {
+        send("raised", alert);
+    }
+
+    @Override
+    public void cleared(LowStockAlertDto alert) {
+        send("cleared", alert);
+    }
+
+    private void send(String event, LowStockAlertDto alert) {
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(new Notification(event, alert));
+        } catch (JsonProcessingException e) {
+            log.warn("Не удалось сериализовать уведомление о пороге для носков id {}", alert.sockId(), e);
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        log.warn("Уведомление о пороге для носков id {} не отправлено: {}", alert.sockId(),
+                                error.getMessage());
+                    } else if (response.statusCode() >= 300) {
+                        log.warn("Уведомление о пороге для носков id {} отклонено, статус {}", alert.sockId(),
+                                response.statusCode());
+                    }
+                });
+    }
+
+    private record Notification(String event, LowStockAlertDto alert) {
+    }
+}
@@ -0,0 +1,263 @@
+package by.klochkov.shop_socks.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Иерархическое колесо таймеров. Постановка и отмена таймера выполняются за O(1): таймер попадает
+ * в ячейку колеса своего уровня, а в {@link DelayQueue} хранятся только непустые ячейки, поэтому
+ * поток колеса просыпается лишь тогда, когда наступает срок очередной ячейки. Ячейки верхних уровней
+ * при наступлении срока раскладываются по нижним уровням. Истёкшие таймеры передаются обработчику
+ * пачкой из потока колеса.
+ */
+@Slf4j
+public class HierarchicalTimingWheel<T> {
+
+    private static final long IDLE_POLL_MILLIS = 200;
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final Consumer<List<T>> expiryHandler;
+    private final DelayQueue<Bucket<T>> bucketQueue = new DelayQueue<>();
+    private final Queue<Timeout<T>> expiredOnSchedule = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Level root;
+    private volatile Thread driver;
+    private volatile boolean running;
+
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, Consumer<List<T>> expiryHandler) {
+        if (tickMillis <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("Некорректные параметры колеса: tick=" + tickMillis + ", size=" + wheelSize);
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.expiryHandler = expiryHandler;
+        this.root = new Level(tickMillis, System.currentTimeMillis());
+    }
+
+    public synchronized void start(String threadName) {
+        if (running) {
+            return;
+        }
+        running = true;
+        driver = new Thread(this::run, threadName);
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread thread = driver;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Ставит таймер на момент {@code deadlineMillis}. Если срок уже наступил, таймер истечёт
+     * на ближайшем такте.
+     */
+    public Timeout<T> schedule(T payload, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(payload, deadlineMillis, pending);
+        pending.incrementAndGet();
+        boolean added;
+        synchronized (this) {
+            added = root.add(timeout);
+        }
+        if (!added) {
+            expiredOnSchedule.add(timeout);
+        }
+        return timeout;
+    }
+
+    public int size() {
+        return pending.get();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Bucket<T> bucket = bucketQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                List<T> expired = new ArrayList<>();
+                collectExpiredOnSchedule(expired);
+                if (bucket != null) {
+                    synchronized (this) {
+                        while (bucket != null) {
+                            root.advance(bucket.getExpiration());
+                            bucket.flush(timeout -> reinsert(timeout, expired));
+                            bucket = bucketQueue.poll();
+                        }
+                    }
+                }
+                if (!expired.isEmpty()) {
+                    expiryHandler.accept(expired);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ошибка обработки истёкших таймеров", e);
+            }
+        }
+    }
+
+    private void collectExpiredOnSchedule(List<T> expired) {
+        Timeout<T> timeout;
+        while ((timeout = expiredOnSchedule.poll()) != null) {
+            if (timeout.expire()) {
+                expired.add(timeout.payload());
+            }
+        }
+    }
+
+    private void reinsert(Timeout<T> timeout, List<T> expired) {
+        if (timeout.isCancelled()) {
+            return;
+        }
+        if (!root.add(timeout) && timeout.expire()) {
+            expired.add(timeout.payload());
+        }
+    }
+
+    private final class Level {
+        private final long tick;
+        private final long interval;
+        private final List<Bucket<T>> buckets;
+        private long currentTime;
+        private Level overflow;
+
+        private Level(long tick, long startMillis) {
+            this.tick = tick;
+            this.interval = tick * wheelSize;
+            this.currentTime = startMillis - startMillis % tick;
+            this.buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new Bucket<>());
+            }
+        }
+
+        /**
+         * @return {@code false}, если срок таймера уже наступил и его нужно выполнить
+         */
+        private boolean add(Timeout<T> timeout) {
+            long deadline = timeout.deadlineMillis();
+            if (deadline < currentTime + tick) {
+                return false;
+            }
+            if (deadline < currentTime + interval) {
+                long virtualId = deadline / tick;
+                Bucket<T> bucket = buckets.get((int) (virtualId % wheelSize));
+                bucket.add(timeout);
+                if (bucket.setExpiration(virtualId * tick)) {
+                    bucketQueue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(interval, currentTime);
+            }
+            return overflow.add(timeout);
+        }
+
+        private void advance(long timeMillis) {
+            if (timeMillis >= currentTime + tick) {
+                currentTime = timeMillis - timeMillis % tick;
+                if (overflow != null) {
+                    overflow.advance(currentTime);
+                }
+            }
+        }
+    }
+
+    private static final class Bucket<T> implements Delayed {
+        private final AtomicLong expiration = new AtomicLong(-1);
+        private List<Timeout<T>> timeouts = new ArrayList<>();
+
+        private void add(Timeout<T> timeout) {
+            timeouts.add(timeout);
+        }
+
+        private boolean setExpiration(long expirationMillis) {
+            return expiration.getAndSet(expirationMillis) != expirationMillis;
+        }
+
+        private long getExpiration() {
+            return expiration.get();
+        }
+
+        private void flush(Consumer<Timeout<T>> consumer) {
+            List<Timeout<T>> flushed = timeouts;
+            timeouts = new ArrayList<>();
+            expiration.set(-1);
+            flushed.forEach(consumer);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getExpiration(), ((Bucket<?>) other).getExpiration());
+        }
+    }
+
+    public static final class Timeout<T> {
+        private static final int PENDING = 0;
+        private static final int EXPIRED = 1;
+        private static final int CANCELLED = 2;
+
+        private final T payload;
+        private final long deadlineMillis;
+        private final AtomicInteger pending;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Timeout(T payload, long deadlineMillis, AtomicInteger pending) {
+            this.payload = payload;
+            this.deadlineMillis = deadlineMillis;
+            this.pending = pending;
+        }
+
+        public T payload() {
+            return payload;
+        }
+
+        public long deadlineMillis() {
+            return deadlineMillis;
+        }
+
+        /**
+         * Отменяет таймер. Сам таймер удаляется из ячейки лениво, когда наступает её срок.
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private boolean expire() {
+            if (state.compareAndSet(PENDING, EXPIRED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
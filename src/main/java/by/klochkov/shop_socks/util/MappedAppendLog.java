@@ -0,0 +1,479 @@
+package by.klochkov.shop_socks.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал только на добавление в файлах-сегментах, отображённых в память. Каждая запись получает
+ * последовательный номер. Сброс на диск групповой: поток журнала делает один {@code force} на все
+ * записи, добавленные с прошлого сброса, а {@link #awaitDurable(long, Duration)} ждёт, пока запись окажется
+ * на диске. После ошибки сброса ожидающие сразу получают ошибку, а следующая попытка идёт с паузой,
+ * растущей до {@link #MAX_FLUSH_BACKOFF}.
+ * <p>
+ * Формат записи: длина данных, CRC32C номера и данных, номер, данные. Конец сегмента — нулевая длина.
+ * При открытии сегменты проверяются, недописанный хвост последнего сегмента отбрасывается.
+ */
+@Slf4j
+public class MappedAppendLog implements Closeable {
+
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final Duration MIN_FLUSH_BACKOFF = Duration.ofMillis(10);
+    private static final Duration MAX_FLUSH_BACKOFF = Duration.ofSeconds(5);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final List<Segment> segments = new ArrayList<>();
+    private long lastSequence;
+    private long durableSequence;
+    private RuntimeException flushFailure;
+    private ReadCursor readCursor;
+    private volatile boolean closed;
+    private Thread flusher;
+
+    public record Entry(long sequence, byte[] payload) {
+    }
+
+    /**
+     * @param initialSequence номер, после которого продолжать нумерацию, если журнал пуст или отстаёт
+     *                        (например, номер последней применённой записи)
+     */
+    public MappedAppendLog(Path directory, int segmentSize, long initialSequence) throws IOException {
+        if (segmentSize <= HEADER_SIZE + Integer.BYTES) {
+            throw new IllegalArgumentException("Слишком маленький размер сегмента: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        recover();
+        if (segments.isEmpty() || lastSequence < initialSequence) {
+            lastSequence = Math.max(lastSequence, initialSequence);
+            segments.add(Segment.open(segmentPath(lastSequence + 1), lastSequence + 1, segmentSize));
+        }
+        durableSequence = lastSequence;
+    }
+
+    public void start(String threadName) {
+        flusher = new Thread(this::flushLoop, threadName);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Добавляет запись и возвращает её номер. Запись ещё не на диске, см. {@link #awaitDurable(long, Duration)}.
+     */
+    public long append(byte[] payload) {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize + Integer.BYTES > segmentSize) {
+            throw new IllegalArgumentException("Запись не помещается в сегмент: " + payload.length + " байт");
+        }
+        lock.lock();
+        try {
+            ensureOpen();
+            Segment active = segments.get(segments.size() - 1);
+            if (active.remaining() < recordSize + Integer.BYTES) {
+                active = Segment.open(segmentPath(lastSequence + 1), lastSequence + 1, segmentSize);
+                segments.add(active);
+            }
+            long sequence = ++lastSequence;
+            active.write(sequence, payload);
+            written.signal();
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать сегмент журнала", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ждёт сброса записи на диск не дольше {@code timeout}.
+     *
+     * @throws IOException если время вышло или последний сброс завершился ошибкой; запись при этом
+     *                     может оказаться на диске позже
+     */
+    public void awaitDurable(long sequence, Duration timeout) throws InterruptedException, IOException {
+        long remaining = timeout.toNanos();
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                ensureOpen();
+                if (flushFailure != null) {
+                    throw new IOException("Журнал не сбрасывается на диск", flushFailure);
+                }
+                if (remaining <= 0) {
+                    throw new IOException("Запись " + sequence + " не сброшена на диск за " + timeout);
+                }
+                remaining = flushed.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Читает до {@code maxEntries} записей, уже сброшенных на диск, с номерами больше {@code afterSequence}.
+     */
+    public List<Entry> read(long afterSequence, int maxEntries) {
+        List<Segment> snapshot;
+        long durable;
+        ReadCursor cursor;
+        lock.lock();
+        try {
+            snapshot = List.copyOf(segments);
+            durable = durableSequence;
+            cursor = readCursor;
+        } finally {
+            lock.unlock();
+        }
+
+        int segmentIndex;
+        int position;
+        if (cursor != null && cursor.sequence() == afterSequence && snapshot.contains(cursor.segment())) {
+            segmentIndex = snapshot.indexOf(cursor.segment());
+            position = cursor.position();
+        } else {
+            segmentIndex = 0;
+            for (int i = 1; i < snapshot.size(); i++) {
+                if (snapshot.get(i).firstSequence <= afterSequence + 1) {
+                    segmentIndex = i;
+                }
+            }
+            position = 0;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long lastRead = afterSequence;
+        while (segmentIndex < snapshot.size() && entries.size() < maxEntries) {
+            Segment segment = snapshot.get(segmentIndex);
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int length;
+            while (entries.size() < maxEntries && position + HEADER_SIZE <= buffer.capacity()
+                    && (length = buffer.getInt(position)) > 0) {
+                long sequence = buffer.getLong(position + 2 * Integer.BYTES);
+                if (sequence > durable) {
+                    break;
+                }
+                if (sequence > afterSequence) {
+                    byte[] payload = new byte[length];
+                    buffer.get(position + HEADER_SIZE, payload);
+                    entries.add(new Entry(sequence, payload));
+                    lastRead = sequence;
+                }
+                position += HEADER_SIZE + length;
+            }
+            if (entries.size() >= maxEntries || lastRead >= durable) {
+                break;
+            }
+            segmentIndex++;
+            position = 0;
+        }
+
+        if (segmentIndex < snapshot.size()) {
+            lock.lock();
+            try {
+                readCursor = new ReadCursor(snapshot.get(segmentIndex), position, lastRead);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Удаляет сегменты, все записи которых не новее {@code appliedSequence}. Активный сегмент не удаляется.
+     */
+    public void deleteThrough(long appliedSequence) {
+        List<Segment> removed = new ArrayList<>();
+        lock.lock();
+        try {
+            while (segments.size() > 1 && segments.get(1).firstSequence - 1 <= appliedSequence) {
+                removed.add(segments.remove(0));
+            }
+            if (readCursor != null && removed.contains(readCursor.segment())) {
+                readCursor = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Segment segment : removed) {
+            try {
+                Files.deleteIfExists(segment.path);
+                log.debug("Удалён применённый сегмент журнала {}", segment.path.getFileName());
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент журнала {}", segment.path, e);
+            }
+        }
+    }
+
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurableSequence() {
+        lock.lock();
+        try {
+            return durableSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сбрасывает на диск всё добавленное и останавливает поток журнала.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        lock.lock();
+        try {
+            closed = true;
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        Duration backoff = MIN_FLUSH_BACKOFF;
+        while (!Thread.currentThread().isInterrupted()) {
+            lock.lock();
+            try {
+                while (durableSequence == lastSequence) {
+                    written.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+                backoff = MIN_FLUSH_BACKOFF;
+            } catch (RuntimeException e) {
+                log.error("Ошибка сброса журнала на диск, повтор через {}", backoff, e);
+                failWaiters(e);
+                try {
+                    Thread.sleep(backoff.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = backoff.multipliedBy(2).compareTo(MAX_FLUSH_BACKOFF) < 0
+                        ? backoff.multipliedBy(2) : MAX_FLUSH_BACKOFF;
+            }
+        }
+    }
+
+    private void failWaiters(RuntimeException failure) {
+        lock.lock();
+        try {
+            flushFailure = failure;
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Один {@code force} на все сегменты, изменённые с прошлого сброса. Добавление записей при этом не блокируется.
+     */
+    private void flush() {
+        long target;
+        List<DirtyRange> ranges = new ArrayList<>();
+        lock.lock();
+        try {
+            target = lastSequence;
+            for (Segment segment : segments) {
+                if (segment.writePosition > segment.flushedPosition) {
+                    ranges.add(new DirtyRange(segment, segment.flushedPosition, segment.writePosition));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (DirtyRange range : ranges) {
+            range.segment().buffer.force(range.from(), range.to() - range.from());
+        }
+
+        lock.lock();
+        try {
+            for (DirtyRange range : ranges) {
+                range.segment().flushedPosition = Math.max(range.segment().flushedPosition, range.to());
+            }
+            durableSequence = Math.max(durableSequence, target);
+            flushFailure = null;
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            String name = path.getFileName().toString();
+            long firstSequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = Segment.open(path, firstSequence, segmentSize);
+            boolean clean = segment.scan();
+            boolean last = i == files.size() - 1;
+            if (!clean && !last) {
+                throw new IllegalStateException("Сегмент журнала повреждён: " + path);
+            }
+            if (!clean) {
+                log.warn("Отброшен недописанный хвост сегмента {} после записи {}", name, segment.lastSequence);
+                segment.truncateTail();
+            }
+            segments.add(segment);
+            lastSequence = segment.lastSequence;
+        }
+        if (!segments.isEmpty()) {
+            log.info("Журнал {} открыт: сегментов {}, последняя запись {}", directory, segments.size(), lastSequence);
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Журнал закрыт");
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int position, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(position + 2 * Integer.BYTES).limit(position + HEADER_SIZE + length));
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long firstSequence;
+        private final MappedByteBuffer buffer;
+        private long lastSequence;
+        private int writePosition;
+        private int flushedPosition;
+
+        private Segment(Path path, long firstSequence, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.buffer = buffer;
+            this.lastSequence = firstSequence - 1;
+        }
+
+        private static Segment open(Path path, long firstSequence, int segmentSize) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                long size = Math.max(channel.size(), segmentSize);
+                return new Segment(path, firstSequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        private int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        private void write(long sequence, byte[] payload) {
+            int position = writePosition;
+            buffer.putLong(position + 2 * Integer.BYTES, sequence);
+            buffer.put(position + HEADER_SIZE, payload);
+            buffer.putInt(position + Integer.BYTES, checksum(buffer, position, payload.length));
+            // длина пишется последней: запись без длины при чтении считается концом сегмента
+            buffer.putInt(position, payload.length);
+            writePosition = position + HEADER_SIZE + payload.length;
+            lastSequence = sequence;
+        }
+
+        /**
+         * @return {@code true}, если сегмент заканчивается нулевой длиной или ровно на границе файла
+         */
+        private boolean scan() {
+            int position = 0;
+            long expected = firstSequence;
+            boolean clean = true;
+            while (position + HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length < 0 || position + HEADER_SIZE + length > buffer.capacity()
+                        || buffer.getLong(position + 2 * Integer.BYTES) != expected
+                        || buffer.getInt(position + Integer.BYTES) != checksum(buffer, position, length)) {
+                    clean = false;
+                    break;
+                }
+                position += HEADER_SIZE + length;
+                expected++;
+            }
+            writePosition = position;
+            flushedPosition = position;
+            lastSequence = expected - 1;
+            return clean;
+        }
+
+        private void truncateTail() {
+            for (int i = writePosition; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+    }
+
+    private record DirtyRange(Segment segment, int from, int to) {
+    }
+
+    private record ReadCursor(Segment segment, int position, long sequence) {
+    }
+}
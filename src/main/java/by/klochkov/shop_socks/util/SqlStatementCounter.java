@@ -0,0 +1,84 @@
+package by.klochkov.shop_socks.util;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Считает обращения к БД текущего потока. Запись начинается {@link #start()} и заканчивается
+ * {@link Recording#close()}; записи могут быть вложенными (тест вокруг запроса MockMvc), тогда
+ * каждый запрос учитывается во всех открытых записях. Пакетное выполнение считается одним обращением.
+ */
+public class SqlStatementCounter implements QueryExecutionListener {
+
+    private static final int MAX_RECORDED_QUERIES = 50;
+    private static final ThreadLocal<List<Recording>> ACTIVE = ThreadLocal.withInitial(ArrayList::new);
+
+    public static Recording start() {
+        Recording recording = new Recording();
+        ACTIVE.get().add(recording);
+        return recording;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        List<Recording> recordings = ACTIVE.get();
+        if (recordings.isEmpty()) {
+            ACTIVE.remove();
+            return;
+        }
+        String query = queryInfoList.isEmpty() ? "" : queryInfoList.get(0).getQuery();
+        for (Recording recording : recordings) {
+            recording.record(query, execInfo.getElapsedTime());
+        }
+    }
+
+    public static final class Recording implements AutoCloseable {
+        private final List<String> queries = new ArrayList<>();
+        private int statements;
+        private long elapsedMillis;
+
+        private Recording() {
+        }
+
+        private void record(String query, long elapsed) {
+            statements++;
+            elapsedMillis += elapsed;
+            if (queries.size() < MAX_RECORDED_QUERIES) {
+                queries.add(query);
+            }
+        }
+
+        public int getStatements() {
+            return statements;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Первые {@value #MAX_RECORDED_QUERIES} запросов, для сообщений об ошибках.
+         */
+        public List<String> getQueries() {
+            return Collections.unmodifiableList(queries);
+        }
+
+        @Override
+        public void close() {
+            List<Recording> recordings = ACTIVE.get();
+            recordings.remove(this);
+            if (recordings.isEmpty()) {
+                ACTIVE.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.config.AdmissionProperties;
+import by.klochkov.shop_socks.controller.GlobalExceptionHandler;
+import by.klochkov.shop_socks.interceptor.Admission;
+import by.klochkov.shop_socks.interceptor.AdmissionControlInterceptor;
+import by.klochkov.shop_socks.interceptor.AdmissionLane;
+import by.klochkov.shop_socks.util.AimdLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.NestedServletException;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class AdmissionControlInterceptorTest {
+
+    private AdmissionControlInterceptor interceptor;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setWrite(new AdmissionProperties.Lane(2, 1, 2));
+        properties.getWrite().setRetryAfter(Duration.ofSeconds(3));
+        interceptor = new AdmissionControlInterceptor(properties);
+        mockMvc = MockMvcBuilders.standaloneSetup(new AdmittedController())
+                .addInterceptors(interceptor)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void preHandle_laneSaturated_shouldRejectWithRetryAfter() throws Exception {
+        AimdLimiter limiter = interceptor.getLimiter(AdmissionLane.WRITE);
+        limiter.tryAcquire();
+        limiter.tryAcquire();
+
+        mockMvc.perform(post("/ok"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "3"));
+
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void afterCompletion_handlerThrows_shouldReleasePermit() throws Exception {
+        AimdLimiter limiter = interceptor.getLimiter(AdmissionLane.WRITE);
+
+        // ошибка, которую обработал GlobalExceptionHandler
+        mockMvc.perform(post("/failing"))
+                .andExpect(status().isInternalServerError());
+        assertEquals(0, limiter.getInFlight());
+
+        // ошибка, которую никто не обработал, доходит до afterCompletion исключением
+        MockMvc withoutAdvice = MockMvcBuilders.standaloneSetup(new AdmittedController())
+                .addInterceptors(interceptor)
+                .build();
+        assertThrows(NestedServletException.class, () -> withoutAdvice.perform(post("/failing")));
+        assertEquals(0, limiter.getInFlight());
+
+        mockMvc.perform(post("/ok"))
+                .andExpect(status().isOk());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @RestController
+    static class AdmittedController {
+
+        @PostMapping("/ok")
+        @Admission(AdmissionLane.WRITE)
+        public String ok() {
+            return "ok";
+        }
+
+        @PostMapping("/failing")
+        @Admission(AdmissionLane.WRITE)
+        public String failing() {
+            throw new IllegalStateException("обработчик упал");
+        }
+    }
+}
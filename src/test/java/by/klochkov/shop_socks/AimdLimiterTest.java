@@ -0,0 +1,57 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.util.AimdLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AimdLimiterTest {
+
+    private static final long THRESHOLD = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void tryAcquire_overLimit_shouldReject() {
+        AimdLimiter limiter = new AimdLimiter(2, 1, 10, THRESHOLD, 0.5);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1.0, limiter.utilization());
+    }
+
+    @Test
+    void release_fastResponses_shouldIncreaseLimit() {
+        AimdLimiter limiter = new AimdLimiter(2, 1, 3, THRESHOLD, 0.5);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire();
+            limiter.tryAcquire();
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+        }
+
+        assertEquals(3, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void release_slowResponseOrFailure_shouldDecreaseLimit() {
+        AimdLimiter limiter = new AimdLimiter(8, 2, 10, THRESHOLD, 0.5);
+
+        limiter.tryAcquire();
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(200), false);
+        assertEquals(4, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(1), true);
+        assertEquals(2, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(1), true);
+        assertEquals(2, limiter.getLimit());
+    }
+}
@@ -0,0 +1,179 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.config.ChangeFeedProperties;
+import by.klochkov.shop_socks.dto.InventoryChangeDto;
+import by.klochkov.shop_socks.event.InventoryChangeEvent;
+import by.klochkov.shop_socks.event.InventoryChangeType;
+import by.klochkov.shop_socks.service.ChangeFeedService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedServiceTest {
+
+    private final ChangeFeedProperties properties = new ChangeFeedProperties();
+    private final List<RecordingEmitter> emitters = new CopyOnWriteArrayList<>();
+    private ChangeFeedService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void subscribe_withColors_shouldReceiveOnlyThoseColors() throws Exception {
+        service = createService();
+        RecordingEmitter emitter = subscribe(List.of("red", " "), null);
+
+        publish("blue", 1);
+        publish("red", 2);
+        publish("green", 3);
+        publish("red", 4);
+
+        List<SentEvent> events = emitter.awaitEvents(2);
+        assertEquals(List.of(2, 4), events.stream().map(event -> event.change().quantity()).toList());
+        assertTrue(events.stream().allMatch(event -> event.name().equals(ChangeFeedService.CHANGE_EVENT_NAME)));
+    }
+
+    @Test
+    void subscribe_withCursor_shouldReplayMissedChanges() throws Exception {
+        service = createService();
+        RecordingEmitter first = subscribe(null, null);
+        publish("red", 1);
+        publish("red", 2);
+        publish("red", 3);
+        List<SentEvent> delivered = first.awaitEvents(3);
+
+        RecordingEmitter resumed = subscribe(null, delivered.get(0).change().cursor());
+
+        List<SentEvent> replayed = resumed.awaitEvents(2);
+        assertEquals(List.of(delivered.get(1).change().cursor(), delivered.get(2).change().cursor()),
+                replayed.stream().map(event -> event.change().cursor()).toList());
+        assertTrue(replayed.stream().noneMatch(event -> event.name().equals(ChangeFeedService.RESET_EVENT_NAME)));
+    }
+
+    @Test
+    void subscribe_cursorOlderThanReplayBuffer_shouldSendResetFirst() throws Exception {
+        properties.setReplayBufferSize(2);
+        service = createService();
+        RecordingEmitter first = subscribe(null, null);
+        for (int i = 1; i <= 4; i++) {
+            publish("red", i);
+        }
+        List<SentEvent> delivered = first.awaitEvents(4);
+
+        RecordingEmitter resumed = subscribe(null, delivered.get(0).change().cursor());
+
+        List<SentEvent> events = resumed.awaitEvents(3);
+        assertEquals(ChangeFeedService.RESET_EVENT_NAME, events.get(0).name());
+        assertEquals(List.of(3, 4), events.subList(1, 3).stream().map(event -> event.change().quantity()).toList());
+    }
+
+    @Test
+    void slowSubscriber_shouldBeDroppedWhenBufferOverflows() throws Exception {
+        properties.setSubscriberBufferSize(2);
+        service = createService();
+        RecordingEmitter slow = subscribe(null, null);
+        slow.blockSends();
+
+        for (int i = 1; i <= 10; i++) {
+            publish("red", i);
+        }
+
+        assertTrue(slow.completed.await(2, TimeUnit.SECONDS));
+        assertEquals(0, service.getSubscriberCount());
+        slow.releaseSends();
+    }
+
+    private ChangeFeedService createService() {
+        return new ChangeFeedService(properties) {
+            @Override
+            protected SseEmitter createEmitter(long timeoutMillis) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+    }
+
+    private RecordingEmitter subscribe(List<String> colors, Long cursor) {
+        service.subscribe(colors, cursor);
+        return emitters.get(emitters.size() - 1);
+    }
+
+    private void publish(String color, int quantity) {
+        service.onInventoryChange(new InventoryChangeEvent(1L, color, 40, 0, quantity, InventoryChangeType.INCOME));
+    }
+
+    private record SentEvent(String name, InventoryChangeDto change) {
+    }
+
+    /**
+     * Запоминает отправленные события вместо записи в HTTP-ответ.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final List<SentEvent> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile CountDownLatch sendGate;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            CountDownLatch gate = sendGate;
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            String name = null;
+            InventoryChangeDto change = null;
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof InventoryChangeDto dto) {
+                    change = dto;
+                } else if (data.getData() instanceof String text && text.contains("event:")) {
+                    name = text.substring(text.indexOf("event:") + 6, text.indexOf('\n', text.indexOf("event:")));
+                }
+            }
+            if (name != null) {
+                events.add(new SentEvent(name, change));
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+
+        void blockSends() {
+            sendGate = new CountDownLatch(1);
+        }
+
+        void releaseSends() {
+            sendGate.countDown();
+        }
+
+        List<SentEvent> awaitEvents(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (events.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(count, events.size(), () -> "Получены события: " + events);
+            return List.copyOf(events);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.util.ExpiringLruCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiringLruCacheTest {
+
+    @Test
+    void get_afterTtl_shouldReturnEmpty() {
+        MutableClock clock = new MutableClock();
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, Duration.ofSeconds(5), clock);
+
+        cache.put("key", "value");
+        assertEquals(Optional.of("value"), cache.get("key"));
+
+        clock.advance(Duration.ofSeconds(5));
+        assertTrue(cache.get("key").isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_withShorterTtl_shouldExpireBeforeCacheTtl() {
+        MutableClock clock = new MutableClock();
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, Duration.ofHours(1), clock);
+
+        cache.put("key", "value", Duration.ofSeconds(5));
+        clock.advance(Duration.ofSeconds(4));
+        assertEquals(Optional.of("value"), cache.get("key"));
+
+        clock.advance(Duration.ofSeconds(1));
+        assertTrue(cache.get("key").isEmpty());
+    }
+
+    @Test
+    void put_overCapacity_shouldEvictLeastRecentlyUsed() {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(2, Duration.ofMinutes(1));
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+
+        assertEquals(Optional.of(1), cache.get("a"));
+        assertTrue(cache.get("b").isEmpty());
+        assertEquals(Optional.of(3), cache.get("c"));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
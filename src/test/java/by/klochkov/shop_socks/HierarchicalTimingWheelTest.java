@@ -0,0 +1,77 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.util.HierarchicalTimingWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    private final List<Integer> expired = new CopyOnWriteArrayList<>();
+    private final HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(10, 8, expired::addAll);
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void schedule_shouldExpireInDeadlineOrderAcrossLevels() throws InterruptedException {
+        wheel.start("test-wheel");
+        long now = System.currentTimeMillis();
+
+        // 8 ячеек по 10 мс: 400 мс попадают на второй уровень, 1000 мс на третий
+        wheel.schedule(3, now + 1000);
+        wheel.schedule(2, now + 400);
+        wheel.schedule(1, now + 50);
+        wheel.schedule(0, now - 10);
+
+        awaitExpired(4, 3000);
+
+        assertEquals(List.of(0, 1, 2, 3), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancel_shouldPreventExpiry() throws InterruptedException {
+        wheel.start("test-wheel");
+        long now = System.currentTimeMillis();
+
+        HierarchicalTimingWheel.Timeout<Integer> cancelled = wheel.schedule(1, now + 100);
+        wheel.schedule(2, now + 150);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+
+        awaitExpired(1, 3000);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertEquals(List.of(2), expired);
+    }
+
+    @Test
+    void schedule_manyTimers_shouldExpireAll() throws InterruptedException {
+        wheel.start("test-wheel");
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 10_000; i++) {
+            wheel.schedule(i, now + (i % 500));
+        }
+
+        awaitExpired(10_000, 5000);
+        assertEquals(10_000, expired.size());
+    }
+
+    private void awaitExpired(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (expired.size() < count && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.config.IdempotencyProperties;
+import by.klochkov.shop_socks.exception.IdempotencyConflictException;
+import by.klochkov.shop_socks.model.IdempotencyRecord;
+import by.klochkov.shop_socks.repository.IdempotencyRecordRepository;
+import by.klochkov.shop_socks.service.IdempotencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository repository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private IdempotencyService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new IdempotencyService(repository, new ObjectMapper(), transactionManager,
+                new IdempotencyProperties());
+    }
+
+    @Test
+    void execute_recordFromDatabase_shouldBeCachedOnlyUntilItExpires() throws InterruptedException {
+        String fingerprint = IdempotencyService.fingerprint("income", "red", 40, 5);
+        IdempotencyRecord stored = IdempotencyRecord.builder()
+                .key("key-1")
+                .fingerprint(fingerprint)
+                .responseStatus(200)
+                .responseBody("\"ok\"")
+                .createdAt(Instant.now())
+                .expiresAt(Instant.now().plusMillis(200))
+                .fresh(false)
+                .build();
+        Mockito.when(repository.findById("key-1")).thenReturn(Optional.of(stored));
+
+        service.execute("key-1", fingerprint, String.class, () -> ResponseEntity.ok("new"));
+        service.execute("key-1", fingerprint, String.class, () -> ResponseEntity.ok("new"));
+        Mockito.verify(repository, Mockito.times(1)).findById("key-1");
+
+        // запись истекла в БД, из кеша её повторять нельзя, хотя срок кеша — сутки
+        Thread.sleep(300);
+        Mockito.when(repository.findById("key-1")).thenReturn(Optional.empty());
+        Mockito.when(repository.saveAndFlush(Mockito.any()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        Mockito.when(repository.existsById("key-1")).thenReturn(true);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> service.execute("key-1", fingerprint, String.class, () -> ResponseEntity.ok("new")));
+        Mockito.verify(repository, Mockito.times(2)).findById("key-1");
+    }
+
+    @Test
+    void execute_keyStoredConcurrently_shouldReturnConflict() {
+        Mockito.when(repository.findById("key-2")).thenReturn(Optional.empty());
+        Mockito.when(repository.saveAndFlush(Mockito.any()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        Mockito.when(repository.existsById("key-2")).thenReturn(true);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> service.execute("key-2", "fingerprint", String.class, () -> ResponseEntity.ok("done")));
+    }
+
+    @Test
+    void execute_otherIntegrityViolation_shouldPropagate() {
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("socks");
+        Mockito.when(repository.findById("key-3")).thenReturn(Optional.empty());
+        Mockito.when(repository.saveAndFlush(Mockito.any())).thenThrow(violation);
+        Mockito.when(repository.existsById("key-3")).thenReturn(false);
+
+        DataIntegrityViolationException thrown = assertThrows(DataIntegrityViolationException.class,
+                () -> service.execute("key-3", "fingerprint", String.class, () -> ResponseEntity.ok("done")));
+        assertEquals(violation, thrown);
+    }
+}
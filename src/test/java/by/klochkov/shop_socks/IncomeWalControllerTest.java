@@ -0,0 +1,70 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.dto.SockRequestDto;
+import by.klochkov.shop_socks.service.IdempotencyService;
+import by.klochkov.shop_socks.service.IncomeWalService;
+import by.klochkov.shop_socks.service.SockService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Поступление при включённом журнале: отдельный контекст, чтобы остальные тесты контроллера шли без журнала.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class IncomeWalControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private IncomeWalService incomeWalService;
+
+    @MockBean
+    private SockService sockService;
+
+    @Test
+    void registerIncome_withWal_shouldReturnAcceptedBodyWithRequestedQuantity() throws Exception {
+        Mockito.when(incomeWalService.append("green", 50, 30, null)).thenReturn(17L);
+
+        mockMvc.perform(post("/api/socks/income")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(new SockRequestDto("green", 50, 30))))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(IncomeWalService.SEQUENCE_HEADER, "17"))
+                .andExpect(jsonPath("$.sequence").value(17))
+                .andExpect(jsonPath("$.requestedQuantity").value(30))
+                .andExpect(jsonPath("$.quantity").doesNotExist());
+
+        Mockito.verifyNoInteractions(sockService);
+    }
+
+    @Test
+    void registerIncome_withWalAndIdempotencyKey_shouldJournalTheKey() throws Exception {
+        String key = "wal-income-" + UUID.randomUUID();
+        Mockito.when(incomeWalService.append("green", 50, 30, key)).thenReturn(18L);
+
+        mockMvc.perform(post("/api/socks/income")
+                        .header(IdempotencyService.IDEMPOTENCY_KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(new SockRequestDto("green", 50, 30))))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.sequence").value(18));
+
+        Mockito.verify(incomeWalService).append("green", 50, 30, key);
+    }
+}
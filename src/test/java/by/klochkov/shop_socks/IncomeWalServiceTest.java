@@ -0,0 +1,142 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.config.IdempotencyProperties;
+import by.klochkov.shop_socks.config.IncomeWalProperties;
+import by.klochkov.shop_socks.model.IncomeWalCheckpoint;
+import by.klochkov.shop_socks.model.IncomeWalKey;
+import by.klochkov.shop_socks.repository.IncomeWalCheckpointRepository;
+import by.klochkov.shop_socks.repository.IncomeWalKeyRepository;
+import by.klochkov.shop_socks.service.IncomeWalService;
+import by.klochkov.shop_socks.service.SockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class IncomeWalServiceTest {
+
+    @Mock
+    private SockService sockService;
+
+    @Mock
+    private IncomeWalCheckpointRepository checkpointRepository;
+
+    @Mock
+    private IncomeWalKeyRepository keyRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    private final IncomeWalProperties properties = new IncomeWalProperties();
+
+    @BeforeEach
+    void setUp() {
+        properties.setDirectory(directory);
+        // перенос только при закрытии, чтобы тест не зависел от фонового потока
+        properties.setDrainInterval(Duration.ofHours(1));
+    }
+
+    @Test
+    void close_shouldApplyEntriesSummedByKeyAndStoreCheckpoint() throws Exception {
+        IncomeWalService service = open();
+        service.append("red", 40, 10, null);
+        service.append("blue", 50, 2, null);
+        service.append("red", 40, 5, null);
+
+        service.close();
+
+        Mockito.verify(sockService).registerIncome("red", 40, 15);
+        Mockito.verify(sockService).registerIncome("blue", 50, 2);
+        ArgumentCaptor<IncomeWalCheckpoint> checkpoint = ArgumentCaptor.forClass(IncomeWalCheckpoint.class);
+        Mockito.verify(checkpointRepository).save(checkpoint.capture());
+        assertEquals(3L, checkpoint.getValue().getAppliedSequence());
+    }
+
+    @Test
+    void open_afterRestart_shouldReplayOnlyUnappliedEntries() throws Exception {
+        IncomeWalService crashed = open();
+        crashed.append("red", 40, 10, null);
+        crashed.append("red", 40, 5, null);
+        crashed.append("green", 20, 7, null);
+
+        // первые две записи уже перенесены до сбоя
+        IncomeWalCheckpoint checkpoint = new IncomeWalCheckpoint(null, 2L, Instant.now());
+        Mockito.when(checkpointRepository.findById(Mockito.anyString())).thenReturn(Optional.of(checkpoint));
+        Mockito.when(checkpointRepository.findForUpdate(Mockito.anyString())).thenReturn(Optional.of(checkpoint));
+        IncomeWalService restarted = open();
+        restarted.close();
+
+        Mockito.verify(sockService).registerIncome("green", 20, 7);
+        Mockito.verifyNoMoreInteractions(sockService);
+        assertEquals(3L, checkpoint.getAppliedSequence());
+    }
+
+    @Test
+    void close_retriedRequest_shouldApplyIdempotencyKeyOnce() throws Exception {
+        // ключ k-2 уже перенесён из журнала другого экземпляра
+        Mockito.when(keyRepository.findAllById(List.of("k-1", "k-2")))
+                .thenReturn(List.of(IncomeWalKey.builder().key("k-2").appliedAt(Instant.now()).build()));
+        IncomeWalService service = open();
+        service.append("red", 40, 10, "k-1");
+        service.append("red", 40, 10, "k-1");
+        service.append("blue", 50, 2, "k-2");
+        service.append("red", 40, 1, null);
+
+        service.close();
+
+        Mockito.verify(sockService).registerIncome("red", 40, 11);
+        Mockito.verifyNoMoreInteractions(sockService);
+        ArgumentCaptor<List<IncomeWalKey>> saved = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(keyRepository).saveAll(saved.capture());
+        assertEquals(List.of("k-1"), saved.getValue().stream().map(IncomeWalKey::getKey).toList());
+    }
+
+    @Test
+    void close_poisonEntry_shouldQuarantineItAndApplyTheRest() throws Exception {
+        properties.setMaxDrainAttempts(1);
+        Mockito.doThrow(new IllegalArgumentException("Цвет не поддерживается"))
+                .when(sockService).registerIncome("bad", 40, 1);
+        IncomeWalService service = open();
+        service.append("bad", 40, 1, null);
+        service.append("red", 40, 10, null);
+        service.append("blue", 50, 2, null);
+
+        service.close();
+
+        Mockito.verify(sockService).registerIncome("red", 40, 10);
+        Mockito.verify(sockService).registerIncome("blue", 50, 2);
+        ArgumentCaptor<IncomeWalCheckpoint> checkpoint = ArgumentCaptor.forClass(IncomeWalCheckpoint.class);
+        Mockito.verify(checkpointRepository, Mockito.times(3)).save(checkpoint.capture());
+        assertEquals(List.of(1L, 2L, 3L),
+                checkpoint.getAllValues().stream().map(IncomeWalCheckpoint::getAppliedSequence).toList());
+        List<String> quarantined = Files.readAllLines(directory.resolve("quarantine.log"));
+        assertEquals(1, quarantined.size());
+        assertTrue(quarantined.get(0).startsWith("1;bad;40;1;"));
+    }
+
+    private IncomeWalService open() throws Exception {
+        IncomeWalService service = new IncomeWalService(sockService, checkpointRepository, keyRepository,
+                properties, new IdempotencyProperties(), transactionManager);
+        service.open();
+        return service;
+    }
+}
@@ -0,0 +1,232 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.config.LowStockProperties;
+import by.klochkov.shop_socks.dto.LowStockAlertDto;
+import by.klochkov.shop_socks.event.InventoryChangeEvent;
+import by.klochkov.shop_socks.event.InventoryChangeType;
+import by.klochkov.shop_socks.model.LowStockAlert;
+import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.repository.LowStockAlertRepository;
+import by.klochkov.shop_socks.repository.SockRepository;
+import by.klochkov.shop_socks.service.LowStockAlertService;
+import by.klochkov.shop_socks.service.LowStockAlertSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@ExtendWith(MockitoExtension.class)
+class LowStockAlertServiceTest {
+
+    @Mock
+    private LowStockAlertRepository alertRepository;
+
+    @Mock
+    private SockRepository sockRepository;
+
+    @Mock
+    private LowStockAlertSink sink;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final LowStockProperties properties = new LowStockProperties();
+
+    @BeforeEach
+    void setUp() {
+        properties.setDefaultThreshold(5);
+        properties.setColors(Map.of("red", 20));
+        LowStockProperties.Sku sku = new LowStockProperties.Sku();
+        sku.setColor("red");
+        sku.setCottonPercentage(80);
+        sku.setThreshold(100);
+        properties.setSkus(List.of(sku));
+    }
+
+    @Test
+    void onInventoryChange_shouldRaiseOncePerCrossingAndClearOnRecovery() throws InterruptedException {
+        stock(1L, "blue", 50, 4);
+        Mockito.when(alertRepository.insertIfAbsent(Mockito.eq(1L), Mockito.eq("blue"), Mockito.eq(50),
+                Mockito.eq(5), Mockito.anyInt(), Mockito.any(Instant.class))).thenReturn(1);
+
+        handle(change(1L, "blue", 50, 10, 4, InventoryChangeType.OUTCOME),
+                change(1L, "blue", 50, 4, 1, InventoryChangeType.OUTCOME));
+
+        ArgumentCaptor<LowStockAlertDto> raised = ArgumentCaptor.forClass(LowStockAlertDto.class);
+        Mockito.verify(sink).raised(raised.capture());
+        assertEquals(5, raised.getValue().threshold());
+        assertEquals(4, raised.getValue().quantity());
+
+        LowStockAlert open = alert(1L, "blue", 50);
+        Mockito.when(alertRepository.findBySockIdAndClearedAtIsNull(1L)).thenReturn(List.of(open));
+        Mockito.when(alertRepository.save(open)).thenReturn(open);
+        stock(1L, "blue", 50, 5);
+        handle(change(1L, "blue", 50, 1, 5, InventoryChangeType.INCOME));
+
+        ArgumentCaptor<LowStockAlertDto> cleared = ArgumentCaptor.forClass(LowStockAlertDto.class);
+        Mockito.verify(sink).cleared(cleared.capture());
+        assertNotNull(cleared.getValue().clearedAt());
+
+        Mockito.when(alertRepository.findBySockIdAndClearedAtIsNull(1L)).thenReturn(List.of());
+        stock(1L, "blue", 50, 0);
+        handle(change(1L, "blue", 50, 5, 0, InventoryChangeType.OUTCOME));
+
+        Mockito.verify(sink, Mockito.times(2)).raised(Mockito.any());
+        Mockito.verify(alertRepository, Mockito.times(2)).insertIfAbsent(Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void onInventoryChange_listenersOutOfCommitOrder_shouldFollowCurrentStock() throws InterruptedException {
+        // отпуск 12 -> 8 закоммичен раньше поступления 8 -> 15, а обработчики выполнились в обратном порядке
+        properties.setColors(Map.of("green", 10));
+        stock(1L, "green", 40, 15);
+
+        handle(change(1L, "green", 40, 8, 15, InventoryChangeType.INCOME),
+                change(1L, "green", 40, 12, 8, InventoryChangeType.OUTCOME));
+
+        Mockito.verify(alertRepository, Mockito.never()).insertIfAbsent(Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verifyNoInteractions(sink);
+    }
+
+    @Test
+    void onInventoryChange_alertAlreadyOpen_shouldNotNotifyAgain() throws InterruptedException {
+        stock(1L, "blue", 50, 4);
+        Mockito.when(alertRepository.insertIfAbsent(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.any())).thenReturn(0);
+
+        handle(change(1L, "blue", 50, 10, 4, InventoryChangeType.OUTCOME));
+
+        Mockito.verifyNoInteractions(sink);
+    }
+
+    @Test
+    void getThreshold_shouldPreferSkuThenColorThenDefault() {
+        LowStockAlertService service = create();
+
+        assertEquals(100, service.getThreshold("red", 80));
+        assertEquals(20, service.getThreshold("red", 50));
+        assertEquals(5, service.getThreshold("blue", 80));
+    }
+
+    @Test
+    void onInventoryChange_shouldRaiseForNewSockBelowThresholdAndIgnoreSockAboveIt() throws InterruptedException {
+        stock(1L, "red", 80, 50);
+        stock(2L, "red", 50, 50);
+        Mockito.when(alertRepository.insertIfAbsent(Mockito.eq(1L), Mockito.eq("red"), Mockito.eq(80),
+                Mockito.eq(100), Mockito.eq(50), Mockito.any(Instant.class))).thenReturn(1);
+
+        handle(change(1L, "red", 80, 0, 50, InventoryChangeType.INCOME),
+                change(2L, "red", 50, 0, 50, InventoryChangeType.INCOME));
+
+        Mockito.verify(sink).raised(Mockito.argThat(alert -> alert.sockId() == 1L && alert.threshold() == 100));
+        Mockito.verifyNoMoreInteractions(sink);
+        Mockito.verify(alertRepository, Mockito.never()).insertIfAbsent(Mockito.eq(2L), Mockito.any(),
+                Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void onInventoryChange_shouldMoveAlertWhenUpdateChangesSku() throws InterruptedException {
+        LowStockAlert open = alert(1L, "red", 80);
+        stock(1L, "red", 50, 10);
+        Mockito.when(alertRepository.findBySockIdAndClearedAtIsNull(1L)).thenReturn(List.of(open));
+        Mockito.when(alertRepository.save(open)).thenReturn(open);
+        Mockito.when(alertRepository.insertIfAbsent(Mockito.eq(1L), Mockito.eq("red"), Mockito.eq(50),
+                Mockito.eq(20), Mockito.eq(10), Mockito.any(Instant.class))).thenReturn(1);
+
+        handle(change(1L, "red", 50, 50, 10, InventoryChangeType.UPDATE));
+
+        Mockito.verify(sink).cleared(Mockito.argThat(alert -> alert.cottonPercentage() == 80));
+        Mockito.verify(sink).raised(Mockito.argThat(alert -> alert.cottonPercentage() == 50 && alert.threshold() == 20));
+    }
+
+    @Test
+    void getActiveAlerts_shouldReadOpenAlertsFromDatabase() {
+        LowStockAlertService service = create();
+        Mockito.when(alertRepository.findByClearedAtIsNullOrderByRaisedAt())
+                .thenReturn(List.of(alert(1L, "red", 80)));
+
+        List<LowStockAlertDto> alerts = service.getActiveAlerts();
+
+        assertEquals(1, alerts.size());
+        assertEquals(80, alerts.get(0).cottonPercentage());
+    }
+
+    @Test
+    void onInventoryChange_thresholdDisabled_shouldNotTouchDatabase() throws InterruptedException {
+        properties.setColors(Map.of());
+        properties.setSkus(List.of());
+        properties.setDefaultThreshold(0);
+
+        handle(change(1L, "blue", 50, 10, 0, InventoryChangeType.OUTCOME),
+                change(1L, "blue", 50, 0, 10, InventoryChangeType.INCOME));
+
+        Mockito.verifyNoInteractions(alertRepository, sockRepository, sink);
+    }
+
+    @Test
+    void onInventoryChange_shouldReconcileOutsideCallerThread() throws InterruptedException {
+        stock(1L, "blue", 50, 4);
+        Mockito.when(alertRepository.insertIfAbsent(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.any())).thenReturn(1);
+        AtomicReference<String> sinkThread = new AtomicReference<>();
+        Mockito.doAnswer(invocation -> {
+            sinkThread.set(Thread.currentThread().getName());
+            return null;
+        }).when(sink).raised(Mockito.any());
+
+        handle(change(1L, "blue", 50, 10, 4, InventoryChangeType.OUTCOME));
+
+        assertEquals("low-stock-alerts", sinkThread.get());
+    }
+
+    private LowStockAlertService create() {
+        return new LowStockAlertService(alertRepository, sockRepository, sink, properties, transactionManager);
+    }
+
+    /**
+     * Передаёт события сервису и дожидается их сверки.
+     */
+    private void handle(InventoryChangeEvent... events) throws InterruptedException {
+        LowStockAlertService service = create();
+        for (InventoryChangeEvent event : events) {
+            service.onInventoryChange(event);
+        }
+        service.close();
+    }
+
+    private void stock(Long id, String color, Integer cottonPercentage, int quantity) {
+        Mockito.when(sockRepository.findForUpdate(color, cottonPercentage))
+                .thenReturn(Optional.of(new Sock(id, color, cottonPercentage, quantity)));
+    }
+
+    private static LowStockAlert alert(Long sockId, String color, Integer cottonPercentage) {
+        return LowStockAlert.builder()
+                .sockId(sockId)
+                .color(color)
+                .cottonPercentage(cottonPercentage)
+                .threshold(100)
+                .quantity(50)
+                .raisedAt(Instant.now())
+                .build();
+    }
+
+    private static InventoryChangeEvent change(Long sockId, String color, Integer cottonPercentage,
+                                               Integer previousQuantity, Integer quantity, InventoryChangeType type) {
+        return new InventoryChangeEvent(sockId, color, cottonPercentage, previousQuantity, quantity, type);
+    }
+}
@@ -0,0 +1,113 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.util.MappedAppendLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedAppendLogTest {
+
+    // 64 байта: в сегмент помещаются две записи по 8 байт данных
+    private static final int SEGMENT_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void append_shouldRollSegmentsAndReadDurableEntriesInOrder() throws Exception {
+        MappedAppendLog log = new MappedAppendLog(directory, SEGMENT_SIZE, 0);
+        log.start("test-wal");
+        for (int i = 1; i <= 5; i++) {
+            log.awaitDurable(log.append(payload(i)), Duration.ofSeconds(5));
+        }
+
+        List<MappedAppendLog.Entry> first = log.read(0, 3);
+        List<MappedAppendLog.Entry> rest = log.read(3, 10);
+        log.close();
+
+        assertEquals(List.of(1L, 2L, 3L), first.stream().map(MappedAppendLog.Entry::sequence).toList());
+        assertEquals(List.of(4L, 5L), rest.stream().map(MappedAppendLog.Entry::sequence).toList());
+        assertEquals("entry-05", new String(rest.get(1).payload(), StandardCharsets.UTF_8));
+        assertEquals(3, log.getSegmentCount());
+    }
+
+    @Test
+    void awaitDurable_withoutFlusher_shouldFailAfterTimeout() throws Exception {
+        MappedAppendLog log = new MappedAppendLog(directory, SEGMENT_SIZE, 0);
+        long sequence = log.append(payload(1));
+
+        assertThrows(IOException.class, () -> log.awaitDurable(sequence, Duration.ofMillis(20)));
+        log.close();
+    }
+
+    @Test
+    void deleteThrough_shouldKeepSegmentsWithUnappliedEntries() throws Exception {
+        MappedAppendLog log = new MappedAppendLog(directory, SEGMENT_SIZE, 0);
+        for (int i = 1; i <= 5; i++) {
+            log.append(payload(i));
+        }
+        log.close();
+
+        log.deleteThrough(3);
+
+        // сегмент с записями 3 и 4 ещё нужен для записи 4
+        assertEquals(2, log.getSegmentCount());
+        assertEquals(2, segmentFiles());
+    }
+
+    @Test
+    void reopen_shouldDropTornTailAndContinueSequence() throws Exception {
+        MappedAppendLog log = new MappedAppendLog(directory, SEGMENT_SIZE, 0);
+        log.append(payload(1));
+        log.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        // недописанная вторая запись: длина есть, контрольная сумма не совпадает
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(24);
+            file.writeInt(8);
+            file.writeInt(12345);
+            file.writeLong(2);
+        }
+
+        MappedAppendLog reopened = new MappedAppendLog(directory, SEGMENT_SIZE, 0);
+        long sequence = reopened.append(payload(2));
+        reopened.close();
+
+        assertEquals(2, sequence);
+        MappedAppendLog recovered = new MappedAppendLog(directory, SEGMENT_SIZE, 0);
+        assertEquals(List.of(1L, 2L), recovered.read(0, 10).stream().map(MappedAppendLog.Entry::sequence).toList());
+        recovered.close();
+    }
+
+    @Test
+    void open_emptyLog_shouldContinueAfterInitialSequence() throws Exception {
+        MappedAppendLog log = new MappedAppendLog(directory, SEGMENT_SIZE, 41);
+
+        assertEquals(42, log.append(payload(1)));
+        log.close();
+    }
+
+    private static byte[] payload(int i) {
+        return String.format("entry-%02d", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.service.SockService;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Основную БД и реплику изображают две H2 в памяти, репликации между ними нет: расхождение данных
+ * показывает, откуда прочитан ответ. Первая реплика в списке недоступна.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "shop-socks.read-replicas.enabled=true",
+        "shop-socks.read-replicas.urls=jdbc:h2:tcp://localhost:1/unreachable," + ReadReplicaRoutingTest.REPLICA_URL,
+        "shop-socks.read-replicas.username=sa",
+        "shop-socks.read-replicas.password=",
+        "shop-socks.read-replicas.connection-timeout=250ms",
+        "shop-socks.read-replicas.health-check-interval=1h",
+        "shop-socks.read-replicas.read-your-writes-window=1h"
+})
+@AutoConfigureMockMvc
+class ReadReplicaRoutingTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SockService sockService;
+
+    /**
+     * Реплика получает схему теми же миграциями до старта контекста: при старте резервы уже читаются
+     * в транзакции readOnly.
+     */
+    @BeforeAll
+    static void migrateReplica() throws Exception {
+        Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(
+                new JdbcConnection(DriverManager.getConnection(REPLICA_URL, "sa", "")));
+        try (Liquibase liquibase = new Liquibase("db/changelog/db.changelog-master.xml",
+                new ClassLoaderResourceAccessor(), database)) {
+            liquibase.update(new Contexts());
+        }
+    }
+
+    @Test
+    void readOnlyQuery_shouldSkipUnreachableReplicaAndReadFromHealthyOne() throws Exception {
+        sockService.registerIncome("replica-read", 50, 100);
+        insertIntoReplica("replica-read", 50, 7);
+
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/api/socks")
+                            .header("X-Client-Id", "reader")
+                            .param("color", "replica-read"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string("7"));
+        }
+    }
+
+    @Test
+    void clientAfterWrite_shouldReadFromPrimary() throws Exception {
+        insertIntoReplica("replica-ryw", 40, 3);
+
+        mockMvc.perform(post("/api/socks/income")
+                        .header("X-Client-Id", "writer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"color\":\"replica-ryw\",\"cottonPercentage\":40,\"quantity\":10}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/socks")
+                        .header("X-Client-Id", "writer")
+                        .param("color", "replica-ryw"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("10"));
+
+        mockMvc.perform(get("/api/socks")
+                        .header("X-Client-Id", "other")
+                        .param("color", "replica-ryw"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("3"));
+    }
+
+    private static void insertIntoReplica(String color, int cottonPercentage, int quantity) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO socks (color, cotton_percentage, quantity) VALUES ('"
+                    + color + "', " + cottonPercentage + ", " + quantity + ")");
+        }
+    }
+}
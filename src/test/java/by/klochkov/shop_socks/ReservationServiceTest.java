@@ -0,0 +1,207 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.config.ReservationProperties;
+import by.klochkov.shop_socks.event.InventoryChangeEvent;
+import by.klochkov.shop_socks.event.InventoryChangeType;
+import by.klochkov.shop_socks.exception.NotEnoughQuantityException;
+import by.klochkov.shop_socks.model.Reservation;
+import by.klochkov.shop_socks.model.ReservationStatus;
+import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.repository.ReservationExpiryView;
+import by.klochkov.shop_socks.repository.ReservationRepository;
+import by.klochkov.shop_socks.repository.SockRepository;
+import by.klochkov.shop_socks.service.ReservationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class ReservationServiceTest {
+
+    @Mock
+    private ReservationRepository reservationRepository;
+
+    @Mock
+    private SockRepository sockRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ReservationProperties properties = new ReservationProperties();
+
+    private ReservationService reservationService;
+
+    @BeforeEach
+    void setUp() {
+        properties.setTick(Duration.ofMillis(10));
+        reservationService = new ReservationService(reservationRepository, sockRepository, eventPublisher,
+                properties, transactionManager);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+        reservationService.stopTimingWheel();
+    }
+
+    @Test
+    void reserve_moreThanAvailable_shouldThrowException() {
+        Mockito.when(sockRepository.findForUpdate("red", 40)).thenReturn(Optional.of(sock(10)));
+        Mockito.when(reservationRepository.getActiveQuantity(Mockito.eq("red"), Mockito.eq(40),
+                Mockito.eq(ReservationStatus.ACTIVE), Mockito.any(Instant.class))).thenReturn(8);
+
+        assertThrows(NotEnoughQuantityException.class, () -> reservationService.reserve("red", 40, 3, null));
+        Mockito.verify(reservationRepository, Mockito.never()).save(Mockito.any(Reservation.class));
+    }
+
+    @Test
+    void reserve_shouldHoldSocksAndScheduleExpiryAfterCommit() {
+        Mockito.when(sockRepository.findForUpdate("red", 40)).thenReturn(Optional.of(sock(10)));
+        Mockito.when(reservationRepository.getActiveQuantity(Mockito.eq("red"), Mockito.eq(40),
+                Mockito.eq(ReservationStatus.ACTIVE), Mockito.any(Instant.class))).thenReturn(2);
+        Mockito.when(reservationRepository.save(Mockito.any(Reservation.class))).thenAnswer(invocation -> {
+            Reservation reservation = invocation.getArgument(0);
+            reservation.setId(7L);
+            return reservation;
+        });
+
+        Reservation reservation = reservationService.reserve("red", 40, 8, 60L);
+
+        assertEquals(ReservationStatus.ACTIVE, reservation.getStatus());
+        assertEquals(Duration.ofSeconds(60), Duration.between(reservation.getCreatedAt(), reservation.getExpiresAt()));
+        assertEquals(0, reservationService.getPendingExpiryCount());
+        commit();
+        assertEquals(1, reservationService.getPendingExpiryCount());
+    }
+
+    @Test
+    void confirm_shouldDecreaseStockAndCancelExpiry() {
+        Reservation reservation = reservation(7L, 4, Instant.now().plusSeconds(60));
+        Sock sock = sock(10);
+        Mockito.when(reservationRepository.findById(7L)).thenReturn(Optional.of(reservation));
+        Mockito.when(sockRepository.findForUpdate("red", 40)).thenReturn(Optional.of(sock));
+        Mockito.when(sockRepository.save(sock)).thenReturn(sock);
+        Mockito.when(reservationRepository.save(reservation)).thenReturn(reservation);
+        scheduleActive(reservation);
+
+        Reservation confirmed = reservationService.confirm(7L);
+        commit();
+
+        assertEquals(ReservationStatus.CONFIRMED, confirmed.getStatus());
+        assertEquals(6, sock.getQuantity());
+        ArgumentCaptor<InventoryChangeEvent> event = ArgumentCaptor.forClass(InventoryChangeEvent.class);
+        Mockito.verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(InventoryChangeType.OUTCOME, event.getValue().type());
+        assertEquals(10, event.getValue().previousQuantity());
+        assertEquals(6, event.getValue().quantity());
+        assertEquals(0, reservationService.getPendingExpiryCount());
+    }
+
+    @Test
+    void cancel_shouldReleaseHoldWithoutChangingStock() {
+        Reservation reservation = reservation(7L, 4, Instant.now().plusSeconds(60));
+        Mockito.when(reservationRepository.findById(7L)).thenReturn(Optional.of(reservation));
+        Mockito.when(reservationRepository.save(reservation)).thenReturn(reservation);
+        scheduleActive(reservation);
+
+        Reservation cancelled = reservationService.cancel(7L);
+        commit();
+
+        assertEquals(ReservationStatus.CANCELLED, cancelled.getStatus());
+        assertEquals(0, reservationService.getPendingExpiryCount());
+        Mockito.verifyNoInteractions(sockRepository, eventPublisher);
+    }
+
+    @Test
+    void confirm_expiredReservation_shouldThrowException() {
+        Reservation reservation = reservation(7L, 4, Instant.now().minusSeconds(1));
+        Mockito.when(reservationRepository.findById(7L)).thenReturn(Optional.of(reservation));
+
+        assertThrows(IllegalArgumentException.class, () -> reservationService.confirm(7L));
+        Mockito.verifyNoInteractions(sockRepository);
+    }
+
+    @Test
+    void expiredReservation_shouldBeMarkedExpiredByTimingWheel() {
+        scheduleActive(reservation(7L, 4, Instant.now().minusSeconds(1)));
+
+        reservationService.startTimingWheel();
+
+        Mockito.verify(reservationRepository, Mockito.timeout(2000))
+                .updateStatus(List.of(7L), ReservationStatus.ACTIVE, ReservationStatus.EXPIRED);
+        assertTrue(waitForNoPendingExpiry());
+    }
+
+    private void scheduleActive(Reservation reservation) {
+        ReservationExpiryView view = new ReservationExpiryView() {
+            @Override
+            public Long getId() {
+                return reservation.getId();
+            }
+
+            @Override
+            public Instant getExpiresAt() {
+                return reservation.getExpiresAt();
+            }
+        };
+        Mockito.when(reservationRepository.findByStatus(ReservationStatus.ACTIVE)).thenReturn(Stream.of(view));
+        reservationService.scheduleActiveReservations();
+        assertEquals(1, reservationService.getPendingExpiryCount());
+    }
+
+    private boolean waitForNoPendingExpiry() {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (reservationService.getPendingExpiryCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        return reservationService.getPendingExpiryCount() == 0;
+    }
+
+    private static void commit() {
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    }
+
+    private static Sock sock(int quantity) {
+        return Sock.builder()
+                .id(1L)
+                .color("red")
+                .cottonPercentage(40)
+                .quantity(quantity)
+                .build();
+    }
+
+    private static Reservation reservation(Long id, int quantity, Instant expiresAt) {
+        return Reservation.builder()
+                .id(id)
+                .color("red")
+                .cottonPercentage(40)
+                .quantity(quantity)
+                .status(ReservationStatus.ACTIVE)
+                .createdAt(expiresAt.minusSeconds(60))
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
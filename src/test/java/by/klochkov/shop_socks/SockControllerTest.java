@@ -1,10 +1,15 @@
 package by.klochkov.shop_socks;
 
+import by.klochkov.shop_socks.config.SockProtobufHttpMessageConverter;
 import by.klochkov.shop_socks.dto.SockDto;
 import by.klochkov.shop_socks.dto.SockRequestDto;
 import by.klochkov.shop_socks.dto.UpdateSockDto;
 import by.klochkov.shop_socks.mapper.SockMapper;
 import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.proto.ErrorArrayResponse;
+import by.klochkov.shop_socks.proto.SockQuantity;
+import by.klochkov.shop_socks.proto.SockRequest;
+import by.klochkov.shop_socks.proto.TextMessage;
 import by.klochkov.shop_socks.service.SockService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
@@ -34,6 +39,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 
 // Импорты для Mockito
 import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
 import org.mockito.ArgumentMatchers;
 
 // Импорты для HTTP статусов и объектов
@@ -43,6 +49,8 @@ import org.springframework.http.HttpStatus;
 // Импорты для тестирования запросов и ответов
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.UUID;
+
 
 
 @SpringBootTest
@@ -144,5 +152,110 @@ class SockControllerTest {
 
         Mockito.verify(sockService).registerOutcome(requestDto.getColor(), requestDto.getCottonPercentage(), requestDto.getQuantity());
     }
-}
 
+    @Test
+    void registerIncome_sameIdempotencyKey_shouldNotCallServiceTwice() throws Exception {
+        SockRequestDto requestDto = new SockRequestDto("white", 70, 5);
+        Sock sock = new Sock(2L, "white", 70, 5);
+        SockDto sockDto = new SockDto("white", 70, 5);
+
+        Mockito.when(sockService.registerIncome(requestDto.getColor(), requestDto.getCottonPercentage(), requestDto.getQuantity()))
+                .thenReturn(sock);
+        Mockito.when(sockMapper.toDto(sock)).thenReturn(sockDto);
+        // ключи хранятся в БД, которая не очищается между запусками
+        String idempotencyKey = "income-white-70-" + UUID.randomUUID();
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/api/socks/income")
+                            .header("Idempotency-Key", idempotencyKey)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(requestDto)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.quantity").value(5));
+        }
+
+        Mockito.verify(sockService, times(1)).registerIncome("white", 70, 5);
+    }
+
+    @Test
+    void registerIncome_protobuf_shouldReadAndWriteProtobuf() throws Exception {
+        Sock sock = new Sock(3L, "grey", 60, 15);
+        Mockito.when(sockService.registerIncome("grey", 60, 15)).thenReturn(sock);
+        Mockito.when(sockMapper.toDto(sock)).thenReturn(new SockDto("grey", 60, 15));
+        SockRequest request = SockRequest.newBuilder().setColor("grey").setCottonPercentage(60).setQuantity(15).build();
+
+        MvcResult result = mockMvc.perform(post("/api/socks/income")
+                        .contentType(SockProtobufHttpMessageConverter.PROTOBUF)
+                        .accept(SockProtobufHttpMessageConverter.PROTOBUF)
+                        .content(request.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SockProtobufHttpMessageConverter.PROTOBUF))
+                .andReturn();
+
+        by.klochkov.shop_socks.proto.Sock response =
+                by.klochkov.shop_socks.proto.Sock.parseFrom(result.getResponse().getContentAsByteArray());
+        assertEquals("grey", response.getColor());
+        assertEquals(15, response.getQuantity());
+        assertFalse(response.hasId());
+    }
+
+    @Test
+    void registerIncome_protobufRequest_shouldAnswerJsonByDefault() throws Exception {
+        Sock sock = new Sock(3L, "grey", 60, 15);
+        Mockito.when(sockService.registerIncome("grey", 60, 15)).thenReturn(sock);
+        Mockito.when(sockMapper.toDto(sock)).thenReturn(new SockDto("grey", 60, 15));
+        SockRequest request = SockRequest.newBuilder().setColor("grey").setCottonPercentage(60).setQuantity(15).build();
+
+        mockMvc.perform(post("/api/socks/income")
+                        .contentType(SockProtobufHttpMessageConverter.PROTOBUF)
+                        .content(request.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.color").value("grey"));
+    }
+
+    @Test
+    void registerOutcome_protobuf_shouldWrapMessage() throws Exception {
+        SockRequest request = SockRequest.newBuilder().setColor("black").setCottonPercentage(40).setQuantity(10).build();
+
+        MvcResult result = mockMvc.perform(post("/api/socks/outcome")
+                        .contentType(SockProtobufHttpMessageConverter.PROTOBUF)
+                        .accept(SockProtobufHttpMessageConverter.PROTOBUF)
+                        .content(request.toByteArray()))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertEquals("Отпуск носков успешно зарегистрирован.",
+                TextMessage.parseFrom(result.getResponse().getContentAsByteArray()).getMessage());
+    }
+
+    @Test
+    void registerIncome_protobufWithoutQuantity_shouldReturnProtobufErrors() throws Exception {
+        SockRequest request = SockRequest.newBuilder().setColor("grey").setCottonPercentage(60).build();
+
+        MvcResult result = mockMvc.perform(post("/api/socks/income")
+                        .contentType(SockProtobufHttpMessageConverter.PROTOBUF)
+                        .accept(SockProtobufHttpMessageConverter.PROTOBUF)
+                        .content(request.toByteArray()))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        ErrorArrayResponse response = ErrorArrayResponse.parseFrom(result.getResponse().getContentAsByteArray());
+        assertEquals(400, response.getStatus());
+        assertTrue(response.getMessageList().contains("Количество не может быть пустым."));
+    }
+
+    @Test
+    void getSocks_protobuf_shouldReturnQuantityMessage() throws Exception {
+        Mockito.when(sockService.getQuantityWithFilter("red", 0, 100)).thenReturn(42);
+
+        MvcResult result = mockMvc.perform(get("/api/socks")
+                        .param("color", "red")
+                        .accept(SockProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertEquals(42,
+                SockQuantity.parseFrom(result.getResponse().getContentAsByteArray()).getQuantity());
+    }
+}
@@ -0,0 +1,92 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.config.SockCacheConfig;
+import by.klochkov.shop_socks.dto.CacheStatisticsDto;
+import by.klochkov.shop_socks.dto.UpdateSockDto;
+import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.repository.SockRepository;
+import by.klochkov.shop_socks.service.CacheStatisticsService;
+import by.klochkov.shop_socks.service.SockService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * БД не очищается между запусками, поэтому у каждого теста свои цвета.
+ */
+@SpringBootTest
+class SockNaturalIdCacheTest {
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private CacheStatisticsService cacheStatisticsService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void findByColorAndCottonPercentage_sameKey_shouldResolveIdFromCache() {
+        String color = uniqueColor("cache-green");
+        Sock created = sockService.registerIncome(color, 30, 5);
+        long hitsBefore = naturalIdHits();
+
+        Optional<Sock> first = sockRepository.findByColorAndCottonPercentage(color, 30);
+        Optional<Sock> second = sockRepository.findByColorAndCottonPercentage(color, 30);
+
+        assertEquals(created.getId(), first.orElseThrow().getId());
+        assertEquals(created.getId(), second.orElseThrow().getId());
+        assertTrue(naturalIdHits() > hitsBefore);
+    }
+
+    @Test
+    void registerIncome_staleCachedQuantity_shouldNotLoseUpdate() {
+        String color = uniqueColor("cache-stale");
+        Sock sock = sockService.registerIncome(color, 30, 5);
+        sockRepository.findByColorAndCottonPercentage(color, 30);
+        // другой экземпляр приложения меняет остаток мимо кеша этого экземпляра
+        jdbcTemplate.update("UPDATE socks SET quantity = 100 WHERE id = ? AND color = ?", sock.getId(), color);
+
+        Sock updated = sockService.registerIncome(color, 30, 7);
+
+        assertEquals(107, updated.getQuantity());
+    }
+
+    @Test
+    void updateSock_changedKey_shouldInvalidateOldKey() {
+        String oldColor = uniqueColor("cache-red");
+        String newColor = uniqueColor("cache-blue");
+        Sock sock = sockService.registerIncome(oldColor, 40, 5);
+        sockRepository.findByColorAndCottonPercentage(oldColor, 40);
+
+        sockService.updateSock(sock.getId(), new UpdateSockDto(newColor, 60, 8));
+
+        assertTrue(sockRepository.findByColorAndCottonPercentage(oldColor, 40).isEmpty());
+        Optional<Sock> moved = sockRepository.findByColorAndCottonPercentage(newColor, 60);
+        assertTrue(moved.isPresent());
+        assertEquals(sock.getId(), moved.get().getId());
+        assertEquals(8, moved.get().getQuantity());
+    }
+
+    private long naturalIdHits() {
+        return cacheStatisticsService.getStatistics().stream()
+                .filter(stats -> stats.region().equals(SockCacheConfig.SOCK_NATURAL_ID_REGION))
+                .mapToLong(CacheStatisticsDto::hits)
+                .sum();
+    }
+
+    private static String uniqueColor(String prefix) {
+        return prefix + "-" + UUID.randomUUID();
+    }
+}
@@ -1,24 +1,42 @@
 package by.klochkov.shop_socks;
 
+import by.klochkov.shop_socks.config.CsvImportProperties;
+import by.klochkov.shop_socks.dto.CsvImportReportDto;
+import by.klochkov.shop_socks.dto.CsvRejectedRowDto;
+import by.klochkov.shop_socks.dto.SockCsvDto;
 import by.klochkov.shop_socks.dto.UpdateSockDto;
+import by.klochkov.shop_socks.event.InventoryChangeEvent;
+import by.klochkov.shop_socks.event.InventoryChangeType;
+import by.klochkov.shop_socks.exception.DataProcessingException;
 import by.klochkov.shop_socks.exception.NotEnoughQuantityException;
 import by.klochkov.shop_socks.mapper.SockMapper;
+import by.klochkov.shop_socks.model.ReservationStatus;
 import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.repository.ReservationRepository;
 import by.klochkov.shop_socks.repository.SockRepository;
+import by.klochkov.shop_socks.service.SockCsvReader;
 import by.klochkov.shop_socks.service.SockService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.validation.Validation;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(MockitoExtension.class)
 class SockServiceTest {
@@ -26,9 +44,21 @@ class SockServiceTest {
     @Mock
     private SockRepository sockRepository;
 
+    @Mock
+    private ReservationRepository reservationRepository;
+
     @Mock
     private SockMapper sockMapper;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private SockCsvReader sockCsvReader = new SockCsvReader(Validation.buildDefaultValidatorFactory().getValidator());
+
+    @Spy
+    private CsvImportProperties csvImportProperties = new CsvImportProperties();
+
     @InjectMocks
     private SockService sockService;
 
@@ -44,7 +74,7 @@ class SockServiceTest {
                 .quantity(5)
                 .build();
 
-        Mockito.when(sockRepository.findByColorAndCottonPercentage(color, cottonPercentage))
+        Mockito.when(sockRepository.findForUpdate(color, cottonPercentage))
                 .thenReturn(Optional.of(existingSock));
         Mockito.when(sockRepository.save(existingSock)).thenReturn(existingSock);
 
@@ -54,6 +84,38 @@ class SockServiceTest {
         Mockito.verify(sockRepository).save(existingSock);
     }
 
+    @Test
+    void registerIncome_newSock_shouldInsertWithQuantity() {
+        Sock created = new Sock(3L, "teal", 40, 10);
+        Mockito.when(sockRepository.findForUpdate("teal", 40))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(created));
+        Mockito.when(sockRepository.insertIfAbsent("teal", 40, 10)).thenReturn(1);
+
+        Sock result = sockService.registerIncome("teal", 40, 10);
+
+        assertEquals(10, result.getQuantity());
+        Mockito.verify(sockRepository, Mockito.never()).save(Mockito.any());
+        Mockito.verify(eventPublisher).publishEvent(
+                new InventoryChangeEvent(3L, "teal", 40, 0, 10, InventoryChangeType.INCOME));
+    }
+
+    @Test
+    void registerIncome_keyInsertedConcurrently_shouldAddToExistingRow() {
+        Sock concurrent = new Sock(4L, "teal", 50, 7);
+        Mockito.when(sockRepository.findForUpdate("teal", 50))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(concurrent));
+        Mockito.when(sockRepository.insertIfAbsent("teal", 50, 10)).thenReturn(0);
+        Mockito.when(sockRepository.save(concurrent)).thenReturn(concurrent);
+
+        Sock result = sockService.registerIncome("teal", 50, 10);
+
+        assertEquals(17, result.getQuantity());
+        Mockito.verify(eventPublisher).publishEvent(
+                new InventoryChangeEvent(4L, "teal", 50, 7, 17, InventoryChangeType.INCOME));
+    }
+
     @Test
     void registerOutcome_notEnoughQuantity_shouldThrowException() {
         String color = "red";
@@ -66,13 +128,29 @@ class SockServiceTest {
                 .quantity(5)
                 .build();
 
-        Mockito.when(sockRepository.findByColorAndCottonPercentage(color, cottonPercentage))
+        Mockito.when(sockRepository.findForUpdate(color, cottonPercentage))
                 .thenReturn(Optional.of(existingSock));
 
         assertThrows(NotEnoughQuantityException.class,
                 () -> sockService.registerOutcome(color, cottonPercentage, quantity));
     }
 
+    @Test
+    void registerOutcome_reservedSocks_shouldNotBeReleased() {
+        Sock existingSock = Sock.builder()
+                .color("red")
+                .cottonPercentage(40)
+                .quantity(10)
+                .build();
+
+        Mockito.when(sockRepository.findForUpdate("red", 40)).thenReturn(Optional.of(existingSock));
+        Mockito.when(reservationRepository.getActiveQuantity(Mockito.eq("red"), Mockito.eq(40),
+                Mockito.eq(ReservationStatus.ACTIVE), Mockito.any(Instant.class))).thenReturn(8);
+
+        assertThrows(NotEnoughQuantityException.class, () -> sockService.registerOutcome("red", 40, 3));
+        Mockito.verify(sockRepository, Mockito.never()).save(Mockito.any(Sock.class));
+    }
+
     @Test
     void getQuantityWithFilter_shouldReturnCorrectValue() {
         String color = "red";
@@ -87,6 +165,17 @@ class SockServiceTest {
         assertEquals(20, result);
     }
 
+    @Test
+    void getQuantityWithFilter_shouldSubtractActiveReservations() {
+        Mockito.when(sockRepository.getTotalQuantityByColorAndCottonPercentageRange("red", 30, 50))
+                .thenReturn(20);
+        Mockito.when(reservationRepository.getActiveQuantityByColorAndCottonPercentageRange(Mockito.eq("red"),
+                Mockito.eq(30), Mockito.eq(50), Mockito.eq(ReservationStatus.ACTIVE), Mockito.any(Instant.class)))
+                .thenReturn(5);
+
+        assertEquals(15, sockService.getQuantityWithFilter("red", 30, 50));
+    }
+
     @Test
     void processCsvFile_emptyFile_shouldThrowException() {
         MultipartFile emptyFile = new MockMultipartFile("file", new byte[0]);
@@ -94,6 +183,82 @@ class SockServiceTest {
         assertThrows(IllegalArgumentException.class, () -> sockService.processCsvFile(emptyFile));
     }
 
+    @Test
+    void processCsvFile_invalidRow_shouldRejectWholeFile() {
+        MultipartFile file = csvFile("red;40;10", "blue;abc;5");
+
+        DataProcessingException exception = assertThrows(DataProcessingException.class,
+                () -> sockService.processCsvFile(file));
+
+        assertTrue(exception.getMessage().startsWith("Строка 3:"));
+    }
+
+    @Test
+    void processCsvFileTolerant_invalidRows_shouldImportValidAndReportRejects() {
+        csvImportProperties.setMaxErrorRate(1.0);
+        MultipartFile file = csvFile("red;40;10", "blue;abc;5", ";50;5", "green;101;0", "red;40");
+        stubCsvMapping();
+        Mockito.when(sockRepository.save(Mockito.any(Sock.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        CsvImportReportDto report = sockService.processCsvFileTolerant(file);
+
+        assertEquals(5, report.totalRows());
+        assertEquals(1, report.importedRows());
+        assertEquals(4, report.rejectedRows());
+        assertEquals(List.of(3L, 4L, 5L, 6L), report.rejects().stream().map(CsvRejectedRowDto::line).toList());
+        assertEquals("Цвет не может быть пустым.", report.rejects().get(1).reason());
+        assertEquals("Процент хлопка не может быть больше 100. Количество должно быть больше 0.",
+                report.rejects().get(2).reason());
+        Mockito.verify(sockRepository).save(Mockito.any(Sock.class));
+    }
+
+    @Test
+    void processCsvFile_repeatedKeys_shouldLoadChunkOnceAndWriteEachSockOnce() {
+        MultipartFile file = csvFile("red;40;1", "blue;50;2", "red;40;3", "green;40;4");
+        stubCsvMapping();
+        Sock red = Sock.builder().id(1L).color("red").cottonPercentage(40).quantity(10).build();
+        // лишнее сочетание цвета и процента хлопка из общего запроса не должно учитываться
+        Sock redFifty = Sock.builder().id(2L).color("red").cottonPercentage(50).quantity(7).build();
+        Mockito.when(sockRepository.findAllForUpdate(Mockito.anyCollection(), Mockito.anyCollection()))
+                .thenReturn(List.of(red, redFifty));
+        Mockito.when(sockRepository.save(Mockito.any(Sock.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        sockService.processCsvFile(file);
+
+        Mockito.verify(sockRepository, Mockito.times(1))
+                .findAllForUpdate(Mockito.anyCollection(), Mockito.anyCollection());
+        assertEquals(14, red.getQuantity());
+        assertEquals(7, redFifty.getQuantity());
+        ArgumentCaptor<Sock> saved = ArgumentCaptor.forClass(Sock.class);
+        Mockito.verify(sockRepository, Mockito.times(3)).save(saved.capture());
+        assertEquals(List.of("red", "blue", "green"), saved.getAllValues().stream().map(Sock::getColor).toList());
+    }
+
+    @Test
+    void processCsvFileTolerant_errorRateExceeded_shouldAbort() {
+        csvImportProperties.setMaxErrorRate(0.3);
+        csvImportProperties.setMinRowsForErrorRate(2);
+        MultipartFile file = csvFile("red;x;1", "red;y;1", "red;40;1", "red;40;1");
+
+        DataProcessingException exception = assertThrows(DataProcessingException.class,
+                () -> sockService.processCsvFileTolerant(file));
+
+        assertTrue(exception.getMessage().startsWith("Загрузка прервана на строке 3"));
+        Mockito.verify(sockRepository, Mockito.never()).save(Mockito.any(Sock.class));
+    }
+
+    @Test
+    void processCsvFileTolerant_smallFileWithBadRow_shouldNotCheckErrorRate() {
+        MultipartFile file = csvFile("red;40;10", "blue;abc;5", "green;30;2");
+        stubCsvMapping();
+        Mockito.when(sockRepository.save(Mockito.any(Sock.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        CsvImportReportDto report = sockService.processCsvFileTolerant(file);
+
+        assertEquals(2, report.importedRows());
+        assertEquals(1, report.rejectedRows());
+    }
+
     @Test
     void updateSock_existingSock_shouldUpdateFields() {
         Long sockId = 1L;
@@ -106,7 +271,7 @@ class SockServiceTest {
                 .quantity(10)
                 .build();
 
-        Mockito.when(sockRepository.findById(sockId)).thenReturn(Optional.of(existingSock));
+        Mockito.when(sockRepository.findByIdForUpdate(sockId)).thenReturn(Optional.of(existingSock));
         Mockito.doAnswer(invocation -> {
             Sock sock = invocation.getArgument(1);
             sock.setColor(dto.color());
@@ -131,4 +296,78 @@ class SockServiceTest {
         assertEquals(dto.quantity(), result.getQuantity());
         Mockito.verify(sockRepository).save(Mockito.any(Sock.class));
     }
+
+    @Test
+    void updateSock_quantityBelowReserved_shouldThrowException() {
+        Sock existingSock = Sock.builder()
+                .id(1L)
+                .color("red")
+                .cottonPercentage(40)
+                .quantity(10)
+                .build();
+
+        Mockito.when(sockRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(existingSock));
+        Mockito.when(reservationRepository.getActiveQuantity(Mockito.eq("red"), Mockito.eq(40),
+                Mockito.eq(ReservationStatus.ACTIVE), Mockito.any(Instant.class))).thenReturn(6);
+
+        assertThrows(NotEnoughQuantityException.class,
+                () -> sockService.updateSock(1L, new UpdateSockDto("red", 40, 5)));
+        Mockito.verify(sockRepository, Mockito.never()).save(Mockito.any(Sock.class));
+    }
+
+    @Test
+    void updateSock_changedKeyWithActiveReservations_shouldThrowException() {
+        Sock existingSock = Sock.builder()
+                .id(1L)
+                .color("red")
+                .cottonPercentage(40)
+                .quantity(10)
+                .build();
+
+        Mockito.when(sockRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(existingSock));
+        Mockito.when(reservationRepository.getActiveQuantity(Mockito.eq("red"), Mockito.eq(40),
+                Mockito.eq(ReservationStatus.ACTIVE), Mockito.any(Instant.class))).thenReturn(2);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> sockService.updateSock(1L, new UpdateSockDto("blue", 40, 10)));
+        Mockito.verify(sockRepository, Mockito.never()).save(Mockito.any(Sock.class));
+    }
+
+    @Test
+    void processCsvFile_sameKeyInSeveralBatches_shouldPublishOneChangePerSock() {
+        csvImportProperties.setBatchSize(1);
+        MultipartFile file = csvFile("red;40;1", "blue;50;3", "red;40;2");
+        stubCsvMapping();
+        Sock red = Sock.builder().id(1L).color("red").cottonPercentage(40).quantity(10).build();
+        Mockito.when(sockRepository.findAllForUpdate(Mockito.anyCollection(), Mockito.anyCollection()))
+                .thenReturn(List.of(red));
+        Mockito.when(sockRepository.save(Mockito.any(Sock.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        sockService.processCsvFile(file);
+
+        ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(eventPublisher, Mockito.times(2)).publishEvent(events.capture());
+        assertEquals(List.of(
+                        new InventoryChangeEvent(1L, "red", 40, 10, 13, InventoryChangeType.IMPORT),
+                        new InventoryChangeEvent(null, "blue", 50, 0, 3, InventoryChangeType.IMPORT)),
+                events.getAllValues());
+    }
+
+    private void stubCsvMapping() {
+        Mockito.when(sockMapper.toListSocks(Mockito.anyList())).thenAnswer(invocation -> {
+            List<SockCsvDto> rows = invocation.getArgument(0);
+            return rows.stream()
+                    .map(row -> Sock.builder()
+                            .color(row.getColor())
+                            .cottonPercentage(row.getCottonPercentage())
+                            .quantity(row.getQuantity())
+                            .build())
+                    .toList();
+        });
+    }
+
+    private static MultipartFile csvFile(String... rows) {
+        String content = "color;cottonPercentage;quantity\n" + String.join("\n", rows) + "\n";
+        return new MockMultipartFile("content", "socks.csv", "text/csv", content.getBytes(StandardCharsets.UTF_8));
+    }
 }
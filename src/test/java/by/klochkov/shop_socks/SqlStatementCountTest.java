@@ -0,0 +1,159 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.dto.SockRequestDto;
+import by.klochkov.shop_socks.dto.UpdateSockDto;
+import by.klochkov.shop_socks.model.Sock;
+import by.klochkov.shop_socks.service.SockService;
+import by.klochkov.shop_socks.util.SqlStatementCounter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static by.klochkov.shop_socks.SqlStatements.assertStatements;
+import static by.klochkov.shop_socks.SqlStatements.statements;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Фиксирует число обращений к БД на основных сценариях. Если изменение добавляет запросы,
+ * тест падает; если убирает — ожидания нужно уменьшить.
+ */
+@SpringBootTest(properties = "shop-socks.sql-statistics.enabled=true")
+@AutoConfigureMockMvc
+class SqlStatementCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SockService sockService;
+
+    @Test
+    void registerIncome_newAndExistingSock() throws Exception {
+        String color = uniqueColor("sql-income");
+
+        // новый ключ: поиск под блокировкой, вставка без конфликта и блокировка вставленной строки
+        mockMvc.perform(post("/api/socks/income")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(color, 20, 5)))
+                .andExpect(status().isOk())
+                .andExpect(statements(3));
+
+        // существующий ключ: поиск под блокировкой и обновление, кеш второго уровня не используется
+        mockMvc.perform(post("/api/socks/income")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(color, 20, 5)))
+                .andExpect(status().isOk())
+                .andExpect(statements(2));
+    }
+
+    @Test
+    void registerIncome_updateShouldFilterByColor() {
+        String color = uniqueColor("sql-partition");
+        sockService.registerIncome(color, 50, 1);
+
+        try (SqlStatementCounter.Recording recording = SqlStatementCounter.start()) {
+            sockService.registerIncome(color, 50, 1);
+
+            // color в условии позволяет PostgreSQL обновлять одну секцию
+            assertTrue(recording.getQueries().stream()
+                            .anyMatch(query -> query.startsWith("update socks") && query.contains("where id=? and color=?")),
+                    () -> "Обновление без условия на color: " + recording.getQueries());
+        }
+    }
+
+    @Test
+    void registerOutcome_existingSock() throws Exception {
+        String color = uniqueColor("sql-outcome");
+        sockService.registerIncome(color, 30, 10);
+
+        // блокировка строки, сумма активных резервов и обновление
+        mockMvc.perform(post("/api/socks/outcome")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(color, 30, 3)))
+                .andExpect(status().isOk())
+                .andExpect(statements(3));
+    }
+
+    @Test
+    void getSocks_shouldQueryStockAndReservations() throws Exception {
+        mockMvc.perform(get("/api/socks")
+                        .param("color", uniqueColor("sql-filter"))
+                        .param("minCottonPercentage", "10")
+                        .param("maxCottonPercentage", "90"))
+                .andExpect(status().isOk())
+                .andExpect(statements(2));
+    }
+
+    @Test
+    void getSock_repeatedKey_shouldReadFromCache() throws Exception {
+        String color = uniqueColor("sql-sku");
+        sockService.registerIncome(color, 35, 9);
+
+        mockMvc.perform(get("/api/socks/sku")
+                        .param("color", color)
+                        .param("cottonPercentage", "35"))
+                .andExpect(status().isOk());
+
+        // ключ и сущность уже в кеше второго уровня
+        mockMvc.perform(get("/api/socks/sku")
+                        .param("color", color)
+                        .param("cottonPercentage", "35"))
+                .andExpect(status().isOk())
+                .andExpect(statements(0));
+    }
+
+    @Test
+    void updateSock_changedKey() {
+        Sock sock = sockService.registerIncome(uniqueColor("sql-update"), 40, 10);
+        UpdateSockDto update = new UpdateSockDto(uniqueColor("sql-update-new"), 45, 12);
+
+        // блокировка строки, сумма резервов, проверка занятости нового ключа и обновление;
+        // сверка уведомления о пороге выполняется после коммита в своём потоке
+        assertStatements(4, () -> sockService.updateSock(sock.getId(), update));
+    }
+
+    @Test
+    void uploadBatch_repeatedKeys_shouldWriteEachSockOnce() throws Exception {
+        String first = uniqueColor("sql-csv-a");
+        String second = uniqueColor("sql-csv-b");
+        String csv = "color;cottonPercentage;quantity\n"
+                + first + ";10;1\n"
+                + second + ";10;1\n"
+                + first + ";10;2\n"
+                + first + ";10;3\n";
+        MockMultipartFile file = new MockMultipartFile("content", "socks.csv", "text/csv",
+                csv.getBytes(StandardCharsets.UTF_8));
+
+        // один запрос позиций пачки под блокировкой, повторы ключа сложены: по вставке на ключ
+        mockMvc.perform(multipart("/api/socks/batch").file(file))
+                .andExpect(status().isOk())
+                .andExpect(statements(3));
+    }
+
+    private String json(String color, int cottonPercentage, int quantity) throws Exception {
+        return objectMapper.writeValueAsString(new SockRequestDto(color, cottonPercentage, quantity));
+    }
+
+    /**
+     * БД не очищается между запусками: с повторяющимися ключами «новая» позиция на втором запуске
+     * уже существовала бы и число запросов было бы другим.
+     */
+    private static String uniqueColor(String prefix) {
+        return prefix + "-" + UUID.randomUUID();
+    }
+}
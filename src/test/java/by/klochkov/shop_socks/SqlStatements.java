@@ -0,0 +1,44 @@
+package by.klochkov.shop_socks;
+
+import by.klochkov.shop_socks.interceptor.SqlStatisticsFilter;
+import by.klochkov.shop_socks.util.SqlStatementCounter;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверки числа обращений к БД. Работают, когда включено {@code shop-socks.sql-statistics.enabled}.
+ */
+final class SqlStatements {
+
+    private SqlStatements() {
+    }
+
+    static <T> T assertStatements(int expected, Supplier<T> action) {
+        try (SqlStatementCounter.Recording recording = SqlStatementCounter.start()) {
+            T result = action.get();
+            assertEquals(expected, recording.getStatements(),
+                    () -> "Неожиданное число обращений к БД, выполнены: " + recording.getQueries());
+            return result;
+        }
+    }
+
+    static void assertStatements(int expected, Runnable action) {
+        assertStatements(expected, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Число обращений к БД за запрос MockMvc по заголовку {@value SqlStatisticsFilter#STATEMENTS_HEADER}.
+     */
+    static ResultMatcher statements(int expected) {
+        return result -> assertEquals(String.valueOf(expected),
+                result.getResponse().getHeader(SqlStatisticsFilter.STATEMENTS_HEADER),
+                () -> "Неожиданное число обращений к БД за " + result.getRequest().getMethod() + " "
+                        + result.getRequest().getRequestURI());
+    }
+}